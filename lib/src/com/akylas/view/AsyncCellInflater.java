@@ -0,0 +1,296 @@
+package com.akylas.view;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Inflates cell views on a background thread ahead of demand, so cells
+ * scrolled in only need to be bound on the UI thread. Each cell type has a
+ * layout and a pool of ready views; {@link #prefetch} tops the pool up in the
+ * background and {@link #obtainView} takes a view from it, falling back to
+ * inflating on the UI thread when the pool is empty.
+ * <p>The work queue is bounded, requests not fitting are dropped. Queued
+ * requests are cancelled when the scroll direction changes, since they were
+ * predicted for the region that is not coming anymore, see
+ * {@link DualScrollView#setAsyncCellInflater}. Layouts inflated here must not
+ * need a Looper on the inflating thread, views that do are inflated on the
+ * UI thread instead.</p>
+ * <p>All the methods must be called from the UI thread.</p>
+ */
+public class AsyncCellInflater {
+    private static final String TAG = "AsyncCellInflater";
+
+    static final int DEFAULT_QUEUE_SIZE = 32;
+
+    private final Context mContext;
+    private final ViewGroup mParent;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor mExecutor;
+    private final SparseArray<CellType> mTypes = new SparseArray<CellType>();
+
+    private int mInflatedCount;
+    private int mHitCount;
+    private int mMissCount;
+    private int mCancelledCount;
+    private int mDroppedCount;
+    private int mFailedCount;
+    private long mTotalWaitTime;
+    private long mMaxWaitTime;
+
+    /**
+     * @param context the context to inflate with
+     * @param parent the parent the cells will be added to, used to generate
+     *        their layout params, can be null
+     */
+    public AsyncCellInflater(Context context, ViewGroup parent) {
+        this(context, parent, DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * @param queueSize how many requests can wait, the ones beyond are dropped
+     */
+    public AsyncCellInflater(Context context, ViewGroup parent, int queueSize) {
+        mContext = context;
+        mParent = parent;
+        mExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                runnable.run();
+                            }
+                        }, TAG);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                        ((InflateRequest) runnable).mType.mInFlight--;
+                        mDroppedCount++;
+                    }
+                });
+    }
+
+    /**
+     * Declares a cell type.
+     *
+     * @param viewType the identifier of the type
+     * @param layoutRes the layout to inflate for it
+     * @param maxPoolSize the most ready views to keep for it
+     */
+    public void registerType(int viewType, int layoutRes, int maxPoolSize) {
+        mTypes.put(viewType, new CellType(layoutRes, Math.max(1, maxPoolSize)));
+    }
+
+    /**
+     * Queues inflations so that the given number of views of a type are
+     * ready or on their way, within the size of its pool.
+     */
+    public void prefetch(int viewType, int count) {
+        final CellType type = getType(viewType);
+        count = Math.min(count, type.mMaxPoolSize) - type.mPool.size() - type.mInFlight;
+        for (int i = 0; i < count; i++) {
+            type.mInFlight++;
+            mExecutor.execute(new InflateRequest(type));
+        }
+    }
+
+    /**
+     * Returns a view of the given type, from the pool if one is ready, else
+     * inflated right away.
+     */
+    public View obtainView(int viewType) {
+        final CellType type = getType(viewType);
+        final int size = type.mPool.size();
+        if (size > 0) {
+            mHitCount++;
+            return type.mPool.remove(size - 1);
+        }
+        mMissCount++;
+        return LayoutInflater.from(mContext).inflate(type.mLayoutRes, mParent, false);
+    }
+
+    /**
+     * Gives back a view that is not used anymore, to be bound again later.
+     */
+    public void recycleView(int viewType, View view) {
+        final CellType type = getType(viewType);
+        if (type.mPool.size() < type.mMaxPoolSize) {
+            type.mPool.add(view);
+        }
+    }
+
+    /**
+     * Cancels the queued inflations. The one running completes and its view
+     * still goes to the pool.
+     */
+    public void cancelPending() {
+        final ArrayList<Runnable> removed = new ArrayList<Runnable>();
+        mExecutor.getQueue().drainTo(removed);
+        for (Runnable runnable : removed) {
+            ((InflateRequest) runnable).mType.mInFlight--;
+        }
+        mCancelledCount += removed.size();
+    }
+
+    /**
+     * Cancels everything and stops the worker thread, the inflater can't be
+     * used afterwards.
+     */
+    public void shutdown() {
+        cancelPending();
+        mExecutor.shutdownNow();
+        mHandler.removeCallbacksAndMessages(null);
+        for (int i = 0; i < mTypes.size(); i++) {
+            mTypes.valueAt(i).mPool.clear();
+        }
+    }
+
+    /**
+     * @return the number of inflations waiting for the worker
+     */
+    public int getQueueDepth() {
+        return mExecutor.getQueue().size();
+    }
+
+    /**
+     * @return the number of views ready for the given type
+     */
+    public int getPoolSize(int viewType) {
+        return getType(viewType).mPool.size();
+    }
+
+    /**
+     * @return the average time between queuing an inflation and its view
+     *         being ready, in milliseconds
+     */
+    public long getAverageWaitTime() {
+        return mInflatedCount > 0 ? mTotalWaitTime / mInflatedCount : 0;
+    }
+
+    public long getMaxWaitTime() {
+        return mMaxWaitTime;
+    }
+
+    public int getInflatedCount() {
+        return mInflatedCount;
+    }
+
+    /**
+     * @return the number of {@link #obtainView} calls served from the pool
+     */
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return the number of {@link #obtainView} calls that had to inflate on
+     *         the UI thread
+     */
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    public int getCancelledCount() {
+        return mCancelledCount;
+    }
+
+    /**
+     * @return the number of inflations dropped because the queue was full
+     */
+    public int getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * @return the number of layouts that could not be inflated in the background
+     */
+    public int getFailedCount() {
+        return mFailedCount;
+    }
+
+    private CellType getType(int viewType) {
+        final CellType type = mTypes.get(viewType);
+        if (type == null) {
+            throw new IllegalArgumentException("Unknown view type " + viewType);
+        }
+        return type;
+    }
+
+    private static final class CellType {
+        final int mLayoutRes;
+        final int mMaxPoolSize;
+        final ArrayList<View> mPool = new ArrayList<View>();
+        /**
+         * Inflations queued or running, only touched on the UI thread.
+         */
+        int mInFlight;
+
+        CellType(int layoutRes, int maxPoolSize) {
+            mLayoutRes = layoutRes;
+            mMaxPoolSize = maxPoolSize;
+        }
+    }
+
+    private final class InflateRequest implements Runnable {
+        final CellType mType;
+        final long mQueueTime = SystemClock.uptimeMillis();
+
+        InflateRequest(CellType type) {
+            mType = type;
+        }
+
+        @Override
+        public void run() {
+            View view = null;
+            try {
+                view = LayoutInflater.from(mContext).cloneInContext(mContext)
+                        .inflate(mType.mLayoutRes, mParent, false);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Failed to inflate in the background", e);
+            }
+            final View inflated = view;
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(InflateRequest.this, inflated);
+                }
+            });
+        }
+    }
+
+    private void deliver(InflateRequest request, View view) {
+        final CellType type = request.mType;
+        type.mInFlight--;
+        if (view == null) {
+            mFailedCount++;
+            return;
+        }
+        final long waitTime = SystemClock.uptimeMillis() - request.mQueueTime;
+        mInflatedCount++;
+        mTotalWaitTime += waitTime;
+        mMaxWaitTime = Math.max(mMaxWaitTime, waitTime);
+        if (type.mPool.size() < type.mMaxPoolSize) {
+            type.mPool.add(view);
+        }
+    }
+}
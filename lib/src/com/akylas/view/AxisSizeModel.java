@@ -0,0 +1,227 @@
+package com.akylas.view;
+
+import java.util.Arrays;
+
+/**
+ * Sizes of the rows or columns of a grid along one axis, for content too
+ * large to be materialized. Sizes are kept in a Fenwick tree over plain int
+ * arrays so that both the offset of an index and the index at an offset are
+ * found in O(log n), and changing the size of an index costs O(log n) too,
+ * whatever the number of items.
+ * <p>Offsets are ints, so the total size must stay below
+ * {@link Integer#MAX_VALUE}.</p>
+ *
+ * @see DualScrollView#setSizeModels
+ */
+public class AxisSizeModel {
+    private int mCount;
+    private int[] mSizes;
+    /**
+     * 1-based Fenwick tree, mTree[i] holds the sum of the sizes of the
+     * indexes in (i - lowbit(i), i].
+     */
+    private int[] mTree;
+    private int mTotalSize;
+    /**
+     * Highest power of two not greater than the count, to walk the tree
+     * from the top in {@link #getIndexAt}.
+     */
+    private int mTopBit;
+
+    /**
+     * @param count the number of rows or columns
+     * @param defaultSize the size of each of them, in pixels
+     */
+    public AxisSizeModel(int count, int defaultSize) {
+        final int[] sizes = new int[Math.max(0, count)];
+        Arrays.fill(sizes, Math.max(0, defaultSize));
+        setSizes(sizes, sizes.length);
+    }
+
+    /**
+     * @param sizes the size of each row or column, in pixels. The array is
+     *        copied.
+     */
+    public AxisSizeModel(int[] sizes) {
+        setSizes(Arrays.copyOf(sizes, sizes.length), sizes.length);
+    }
+
+    private void setSizes(int[] sizes, int count) {
+        mSizes = sizes;
+        mCount = count;
+        rebuild();
+    }
+
+    /**
+     * Builds the tree from mSizes in O(n).
+     */
+    private void rebuild() {
+        final int count = mCount;
+        if (mTree == null || mTree.length < mSizes.length + 1) {
+            mTree = new int[mSizes.length + 1];
+        } else {
+            Arrays.fill(mTree, 0);
+        }
+        final int[] tree = mTree;
+        int total = 0;
+        for (int i = 1; i <= count; i++) {
+            tree[i] += mSizes[i - 1];
+            total += mSizes[i - 1];
+            final int parent = i + (i & -i);
+            if (parent <= count) {
+                tree[parent] += tree[i];
+            }
+        }
+        mTotalSize = total;
+        mTopBit = count > 0 ? Integer.highestOneBit(count) : 0;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return the sum of all the sizes
+     */
+    public int getTotalSize() {
+        return mTotalSize;
+    }
+
+    public int getSize(int index) {
+        checkIndex(index);
+        return mSizes[index];
+    }
+
+    /**
+     * Changes the size of one row or column, in O(log n).
+     */
+    public void setSize(int index, int size) {
+        checkIndex(index);
+        size = Math.max(0, size);
+        final int delta = size - mSizes[index];
+        if (delta == 0) {
+            return;
+        }
+        mSizes[index] = size;
+        mTotalSize += delta;
+        final int[] tree = mTree;
+        for (int i = index + 1; i <= mCount; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * @return the position where the given row or column starts, which is
+     *         the sum of the sizes before it. An index equal to the count
+     *         gives the total size.
+     */
+    public int getOffset(int index) {
+        if (index < 0 || index > mCount) {
+            throw new IndexOutOfBoundsException("index " + index + ", count " + mCount);
+        }
+        final int[] tree = mTree;
+        int offset = 0;
+        for (int i = index; i > 0; i -= i & -i) {
+            offset += tree[i];
+        }
+        return offset;
+    }
+
+    /**
+     * @return the row or column containing the given position, clamped to
+     *         the valid indexes, or -1 if there are none
+     */
+    public int getIndexAt(int offset) {
+        if (mCount == 0) {
+            return -1;
+        }
+        if (offset <= 0) {
+            return 0;
+        }
+        // walk down the tree, keeping the largest prefix not reaching offset
+        final int[] tree = mTree;
+        int index = 0;
+        int remaining = offset;
+        for (int bit = mTopBit; bit != 0; bit >>= 1) {
+            final int next = index + bit;
+            if (next <= mCount && tree[next] <= remaining) {
+                index = next;
+                remaining -= tree[next];
+            }
+        }
+        return Math.min(index, mCount - 1);
+    }
+
+    /**
+     * Inserts rows or columns, in O(n).
+     *
+     * @param index where to insert them
+     * @param count how many to insert
+     * @param size the size of each of them
+     */
+    public void insert(int index, int count, int size) {
+        if (index < 0 || index > mCount) {
+            throw new IndexOutOfBoundsException("index " + index + ", count " + mCount);
+        }
+        if (count <= 0) {
+            return;
+        }
+        int[] sizes = mSizes;
+        if (mCount + count > sizes.length) {
+            sizes = new int[Math.max(mCount + count, mCount + (mCount >> 1))];
+            System.arraycopy(mSizes, 0, sizes, 0, index);
+        }
+        System.arraycopy(mSizes, index, sizes, index + count, mCount - index);
+        Arrays.fill(sizes, index, index + count, Math.max(0, size));
+        mSizes = sizes;
+        mCount += count;
+        rebuild();
+    }
+
+    /**
+     * Removes rows or columns, in O(n).
+     */
+    public void remove(int index, int count) {
+        if (index < 0 || count < 0 || index + count > mCount) {
+            throw new IndexOutOfBoundsException("index " + index + ", count " + count
+                    + ", size " + mCount);
+        }
+        if (count == 0) {
+            return;
+        }
+        System.arraycopy(mSizes, index + count, mSizes, index, mCount - index - count);
+        mCount -= count;
+        rebuild();
+    }
+
+    /**
+     * Moves a range of rows or columns, in O(n).
+     *
+     * @param from the current index of the first of them
+     * @param to the index of the first of them once moved
+     * @param count how many to move
+     */
+    public void move(int from, int to, int count) {
+        if (count <= 0 || from == to) {
+            return;
+        }
+        if (from < 0 || to < 0 || from + count > mCount || to + count > mCount) {
+            throw new IndexOutOfBoundsException("from " + from + ", to " + to
+                    + ", count " + count + ", size " + mCount);
+        }
+        final int[] moved = Arrays.copyOfRange(mSizes, from, from + count);
+        if (from < to) {
+            System.arraycopy(mSizes, from + count, mSizes, from, to - from);
+        } else {
+            System.arraycopy(mSizes, to, mSizes, to + count, from - to);
+        }
+        System.arraycopy(moved, 0, mSizes, to, count);
+        rebuild();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException("index " + index + ", count " + mCount);
+        }
+    }
+}
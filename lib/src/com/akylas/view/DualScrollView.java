@@ -3,12 +3,20 @@ package com.akylas.view;
 import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.FocusFinder;
 import android.view.InputDevice;
 import android.view.KeyEvent;
@@ -20,13 +28,22 @@ import android.view.ViewDebug;
 import android.view.ViewGroup;
 import android.view.ViewParent;
 import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityManager;
 import android.view.accessibility.AccessibilityNodeInfo;
 import android.view.animation.AnimationUtils;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
 import android.widget.EdgeEffect;
 import android.widget.FrameLayout;
 import android.widget.OverScroller;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 /**
  * Layout container for a view hierarchy that can be scrolled by the user,
@@ -54,22 +71,254 @@ public class DualScrollView extends FrameLayout {
 	private static final boolean HONEYCOMB_OR_GREATER = (Build.VERSION.SDK_INT >= 11);
 	private static final boolean ICE_CREAM_OR_GREATER = (Build.VERSION.SDK_INT >= 14);
 	private static final boolean JELLY_BEAN_OR_GREATER = (Build.VERSION.SDK_INT >= 16);
+	private static final boolean KITKAT_OR_GREATER = (Build.VERSION.SDK_INT >= 19);
+	private static final boolean LOLLIPOP_OR_GREATER = (Build.VERSION.SDK_INT >= 21);
+	private static final boolean MARSHMALLOW_OR_GREATER = (Build.VERSION.SDK_INT >= 23);
+	private static final boolean PIE_OR_GREATER = (Build.VERSION.SDK_INT >= 28);
 	
     static final int ANIMATED_SCROLL_GAP = 250;
 
     static final float MAX_SCROLL_FACTOR = 0.5f;
 
+    /**
+     * While an arrow key repeats, the jump grows by one page fraction every
+     * KEY_REPEAT_ACCELERATION_STEP repeats, up to KEY_REPEAT_MAX_ACCELERATION times.
+     */
+    static final int KEY_REPEAT_ACCELERATION_STEP = 5;
+    static final int KEY_REPEAT_MAX_ACCELERATION = 4;
+
+    /**
+     * Continuous key scrolling: initial velocity, acceleration while the key
+     * is held and maximum velocity, in dips per second.
+     */
+    static final float KEY_SCROLL_BASE_VELOCITY = 600;
+    static final float KEY_SCROLL_ACCELERATION = 1200;
+    static final float KEY_SCROLL_MAX_VELOCITY = 4000;
+
+    /**
+     * Distance scrolled by one mouse wheel notch, in dips, and duration of
+     * the animation that follows wheel notches.
+     */
+    static final float WHEEL_SCROLL_DISTANCE = 64;
+    static final int WHEEL_SCROLL_DURATION = 150;
+
+    /**
+     * Default minimum time between two scroll accessibility events, in milliseconds.
+     */
+    static final int DEFAULT_ACCESSIBILITY_SCROLL_EVENT_INTERVAL = 100;
+
+    /**
+     * Delay between two animation frames when Choreographer is not available.
+     */
+    static final int FALLBACK_FRAME_DELAY = 10;
+
+    /**
+     * Default duration of a queued smooth scroll, same as the {@link OverScroller} default.
+     */
+    static final int DEFAULT_QUEUED_SCROLL_DURATION = 250;
+
+    private static final Interpolator DEFAULT_QUEUED_SCROLL_INTERPOLATOR = new DecelerateInterpolator();
+
+    /**
+     * Priorities of queued scroll requests. A request never interrupts a
+     * running queued scroll of a higher priority.
+     */
+    public static final int SCROLL_PRIORITY_LOW = 0;
+    public static final int SCROLL_PRIORITY_NORMAL = 1;
+    public static final int SCROLL_PRIORITY_HIGH = 2;
+
+    /**
+     * Scroll states, see {@link OnScrollListener#onScrollStateChanged}.
+     */
+    public static final int SCROLL_STATE_IDLE = 0;
+    public static final int SCROLL_STATE_DRAGGING = 1;
+    public static final int SCROLL_STATE_FLINGING = 2;
+    public static final int SCROLL_STATE_SETTLING = 3;
+    public static final int SCROLL_STATE_SCRUBBING = 4;
+
+    /**
+     * How often a scroll listener is told about position changes: once per
+     * frame, once the position moved by a given distance, or only once the
+     * scroll is idle.
+     */
+    public static final int DELIVER_EVERY_FRAME = 0;
+    public static final int DELIVER_EVERY_DISTANCE = 1;
+    public static final int DELIVER_ON_IDLE = 2;
+
+    /**
+     * Render properties a scroll effect can drive, see {@link #addScrollEffect}.
+     */
+    public static final int EFFECT_TRANSLATION_X = 0;
+    public static final int EFFECT_TRANSLATION_Y = 1;
+    public static final int EFFECT_ALPHA = 2;
+    public static final int EFFECT_SCALE_X = 3;
+    public static final int EFFECT_SCALE_Y = 4;
+    public static final int EFFECT_ROTATION = 5;
+
+    /**
+     * Scroll axes a scroll effect can follow.
+     */
+    public static final int EFFECT_AXIS_X = 0;
+    public static final int EFFECT_AXIS_Y = 1;
+
+    /**
+     * Where {@link #scrollToCell} puts the cell in the viewport.
+     */
+    public static final int CELL_ALIGN_START = 0;
+    public static final int CELL_ALIGN_CENTER = 1;
+    public static final int CELL_ALIGN_END = 2;
+
+    /**
+     * Smooth scrolls to a cell farther than this many viewports first jump
+     * to one viewport away from it, and only animate the rest.
+     */
+    static final int CELL_JUMP_VIEWPORTS = 2;
+
+    /**
+     * Structural changes of the rows or columns of grid content.
+     */
+    private static final int GRID_CHANGE_INSERT = 0;
+    private static final int GRID_CHANGE_REMOVE = 1;
+    private static final int GRID_CHANGE_MOVE = 2;
+
+    /**
+     * Directions the children under the pointer can scroll their own
+     * content in, cached for the gesture.
+     */
+    private static final int CHILD_SCROLL_LEFT = 1;
+    private static final int CHILD_SCROLL_RIGHT = 1 << 1;
+    private static final int CHILD_SCROLL_UP = 1 << 2;
+    private static final int CHILD_SCROLL_DOWN = 1 << 3;
+
+    /**
+     * Over-scroll styles: edge glows, or the content itself following the
+     * finger with resistance and springing back.
+     */
+    public static final int OVER_SCROLL_STYLE_GLOW = 0;
+    public static final int OVER_SCROLL_STYLE_ELASTIC = 1;
+
+    /**
+     * Default stiffness of the elastic over-scroll spring, in 1/s^2. The
+     * spring is critically damped so it never oscillates around the edge.
+     */
+    static final float DEFAULT_ELASTIC_STIFFNESS = 300f;
+
+    /**
+     * Longest integration step of the elastic spring, in seconds, so stiff
+     * springs stay stable on slow frames.
+     */
+    private static final float ELASTIC_MAX_STEP = 0.004f;
+
+    /**
+     * Velocity under which a spring close to its edge is at rest, in pixels
+     * per second.
+     */
+    private static final float ELASTIC_REST_VELOCITY = 20f;
+
+    /**
+     * Fast scroll thumbs: what is being dragged, their sizes in dp and how
+     * long the finger has to rest before scrubbing is considered paused, in
+     * milliseconds.
+     */
+    static final int FAST_SCROLL_NONE = 0;
+    static final int FAST_SCROLL_HORIZONTAL = 1;
+    static final int FAST_SCROLL_VERTICAL = 2;
+    static final int FAST_SCROLL_PUCK = 3;
+    static final int FAST_SCROLL_MINIMAP = 4;
+    static final int FAST_SCROLL_THICKNESS = 6;
+    static final int FAST_SCROLL_MIN_LENGTH = 48;
+    static final int FAST_SCROLL_TOUCH_WIDTH = 32;
+    static final int FAST_SCROLL_PUCK_SIZE = 40;
+    static final int DEFAULT_FAST_SCROLL_COLOR = 0x99808080;
+    static final int SCRUB_PAUSE_DELAY = 150;
+
+    /**
+     * Minimap: default largest size and margin in dp, size of the tiles it is
+     * built by in pixels of the thumbnail, and how long it may render tiles
+     * in one idle pass, in milliseconds.
+     */
+    static final int DEFAULT_MINIMAP_SIZE = 120;
+    static final int MINIMAP_MARGIN = 8;
+    static final int MINIMAP_TILE_SIZE = 32;
+    static final int MINIMAP_IDLE_BUDGET = 4;
+    static final int MINIMAP_DIRTY_INTERVAL = 250;
+    static final int MINIMAP_BATCH_TILES = 4;
+    static final int DEFAULT_MINIMAP_BACKGROUND = 0xFFF0F0F0;
+    static final int DEFAULT_MINIMAP_VIEWPORT_COLOR = 0xFF3F51B5;
+
     private static final String TAG = "DualScrollView";
 
     private long mLastScroll;
 
     private final Rect mTempRect = new Rect();
     private OverScroller mScroller;
+    private final FramePump mFramePump = new FramePump();
     private EdgeEffect mEdgeGlowTop;
     private EdgeEffect mEdgeGlowBottom;
     private EdgeEffect mEdgeGlowLeft;
     private EdgeEffect mEdgeGlowRight;
 
+    /**
+     * Elastic over-scroll state. The style is read by setOverScrollMode, which
+     * the constructor of View calls during super(), before the field
+     * initializers run. It has no initializer, so its default of 0 must be
+     * {@link #OVER_SCROLL_STYLE_GLOW}.
+     */
+    private int mOverScrollStyle;
+    private float mElasticStiffness = DEFAULT_ELASTIC_STIFFNESS;
+    private final ElasticSpring mElasticSpringX = new ElasticSpring();
+    private final ElasticSpring mElasticSpringY = new ElasticSpring();
+    private long mElasticLastTime;
+
+    private boolean mFastScrollEnabled;
+    private boolean mFastScrollPuckEnabled;
+    private final Paint mFastScrollPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF mFastScrollRect = new RectF();
+    private int mFastScrollThickness;
+    private int mFastScrollMinLength;
+    private int mFastScrollTouchWidth;
+    private int mFastScrollPuckSize;
+
+    /**
+     * Scrubbing state: the thumb being dragged, where the finger grabbed it,
+     * and the position to jump to on the next frame.
+     */
+    private int mFastScrollTarget = FAST_SCROLL_NONE;
+    private float mFastScrollTouchOffsetX;
+    private float mFastScrollTouchOffsetY;
+    private int mScrubTargetX;
+    private int mScrubTargetY;
+    private boolean mScrubPending;
+    private boolean mScrubPaused;
+    private long mScrubLastMoveTime;
+
+    private Minimap mMinimap;
+
+    /**
+     * Sizes of the columns and rows of virtualized grid content. When set,
+     * they give the extent of the content on their axis instead of the child.
+     */
+    private AxisSizeModel mColumnSizeModel;
+    private AxisSizeModel mRowSizeModel;
+
+    /**
+     * Prefetching of the region about to be scrolled in: where it is, which
+     * way the content last moved on each axis (-1, 0 or 1), and the
+     * prefetcher measuring the texts of its cells.
+     */
+    private OnPrefetchRegionListener mPrefetchRegionListener;
+    private TextLayoutPrefetcher mTextLayoutPrefetcher;
+    private final Rect mPrefetchRegion = new Rect();
+    private final Rect mLastPrefetchRegion = new Rect();
+    private int mPrefetchDirectionX;
+    private int mPrefetchDirectionY;
+    private boolean mPrefetchPending;
+    private AsyncCellInflater mCellInflater;
+    private GridCellBinder mGridCellBinder;
+    private ScrollGroup mScrollGroup;
+    private boolean mScrollGroupLinkX;
+    private boolean mScrollGroupLinkY;
+
 	private boolean shouldClampScroll = true;
 	
 	/**
@@ -80,10 +329,25 @@ public class DualScrollView extends FrameLayout {
 	private boolean mTwoDScrollViewMovedFocus;
 	
    /**
-     * Position of the last motion event.
+     * Position of the last motion event, kept in float so that slow drags
+     * moving less than a pixel per event still add up.
+     */
+    private float mLastMotionY;
+    private float mLastMotionX;
+
+    /**
+     * Fractions of pixels dragged and not scrolled yet.
      */
-    private int mLastMotionY;
-    private int mLastMotionX;
+    private float mDragResidualX;
+    private float mDragResidualY;
+
+    /**
+     * CHILD_SCROLL_* flags of the children under the pointer, queried once on
+     * the down event, and whether one of them got the current gesture.
+     */
+    private boolean mChildAwareInterception = true;
+    private int mChildScrollDirections;
+    private boolean mChildOwnsGesture;
 
     /**
      * True when the layout has changed but the traversal has not come through yet.
@@ -118,16 +382,184 @@ public class DualScrollView extends FrameLayout {
     private boolean mFillViewport;
 
     /**
-     * Whether arrow scrolling is animated.
+     * Whether arrow and mouse wheel scrolling is animated.
      */
     private boolean mSmoothScrollingEnabled = true;
 
+    /**
+     * Whether the child is moved to a hardware layer while dragging or flinging.
+     */
+    private boolean mAutoHardwareLayerEnabled = false;
+
+    /**
+     * True while the child is on a hardware layer that we put it on.
+     */
+    private boolean mChildLayerPromoted = false;
+
+    /**
+     * Number of frames drawn while the child was on the hardware layer, and
+     * number of times the child was promoted.
+     */
+    private long mLayerFrameCount;
+    private long mLayerPromotionCount;
+
+    /**
+     * Scroll requests queued since the last frame, and the ones the running
+     * queued scroll animation is made of.
+     */
+    private final ArrayList<ScrollRequest> mPendingScrollRequests = new ArrayList<ScrollRequest>();
+    private final ArrayList<ScrollRequest> mRunningScrollRequests = new ArrayList<ScrollRequest>();
+
+    /**
+     * State of the queued scroll animation.
+     */
+    private boolean mQueuedScrollRunning;
+    private int mQueuedScrollPriority;
+    private int mQueuedScrollStartX;
+    private int mQueuedScrollStartY;
+    private int mQueuedScrollTargetX;
+    private int mQueuedScrollTargetY;
+    private long mQueuedScrollStartTime;
+    private int mQueuedScrollDuration;
+    private Interpolator mQueuedScrollInterpolator;
+
+    private final ArrayList<ScrollListenerEntry> mScrollListeners = new ArrayList<ScrollListenerEntry>();
+    private int mScrollState = SCROLL_STATE_IDLE;
+
+    /**
+     * True when the position changed since scroll listeners were last dispatched.
+     */
+    private boolean mScrollUpdatePending;
+
+    private final ArrayList<ScrollEffect> mScrollEffects = new ArrayList<ScrollEffect>();
+    private boolean mScrollEffectsPending;
+
+    private final ArrayList<OnViewportChangeListener> mViewportListeners = new ArrayList<OnViewportChangeListener>();
+    /**
+     * Listeners added since the last publication, told about the whole
+     * viewport instead of what changed.
+     */
+    private final ArrayList<OnViewportChangeListener> mNewViewportListeners = new ArrayList<OnViewportChangeListener>();
+
+    /**
+     * Size of the grid the published viewport is snapped to, 0 for none.
+     */
+    private int mViewportTileWidth;
+    private int mViewportTileHeight;
+
+    /**
+     * Viewport last published to the viewport listeners, in child coordinates,
+     * and the buffers used to publish the changes.
+     */
+    private final Rect mLastViewport = new Rect();
+    private final Rect mViewport = new Rect();
+    private Rect[] mEnteredRegions;
+    private Rect[] mExitedRegions;
+    private boolean mViewportUpdatePending;
+
+    /**
+     * Descendant whose children are hidden from drawing while far from the
+     * viewport, how deep in its hierarchy to go, and how close to the
+     * viewport (in pixels) they must be to be drawn again.
+     */
+    private ViewGroup mCullingContainer;
+    private int mCullingDepth = 1;
+    private int mCullingMargin;
+
+    /**
+     * Views off screen that the culling container does not draw.
+     */
+    private final HashSet<View> mCulledViews = new HashSet<View>();
+    private final Rect mCullingRect = new Rect();
+    private boolean mCullingUpdatePending;
+
+    /**
+     * Focusable descendants, kept across key presses until the hierarchy, its
+     * layout or its focusability changes. Views hidden or moved since then
+     * are caught when the cache is queried.
+     */
+    private ArrayList<View> mFocusablesCache;
+    private boolean mFocusablesCacheValid;
+
+    /**
+     * Whether holding an arrow key scrolls continuously, the direction of the
+     * running continuous scroll (0 for none), when the key went down and when
+     * the scroll was last advanced.
+     */
+    private boolean mContinuousKeyScrollEnabled;
+    private int mKeyScrollDirection;
+    private long mKeyScrollStartTime;
+    private long mKeyScrollLastTime;
+    private float mKeyScrollResidual;
+    private float mDensity;
+
+    /**
+     * Fractions of pixels received from the mouse wheel or trackpad and not
+     * scrolled yet.
+     */
+    private float mWheelResidualX;
+    private float mWheelResidualY;
+
+    /**
+     * Minimum time between two {@link AccessibilityEvent#TYPE_VIEW_SCROLLED}
+     * events, when the last one was sent and the position it reported.
+     */
+    private long mAccessibilityScrollEventInterval = DEFAULT_ACCESSIBILITY_SCROLL_EVENT_INTERVAL;
+    private long mLastAccessibilityScrollEventTime;
+    private int mLastAccessibilityScrollX;
+    private int mLastAccessibilityScrollY;
+    private boolean mAccessibilityScrollEventPending;
+    private final Runnable mSendAccessibilityScrollEvent = new Runnable() {
+        @Override
+        public void run() {
+            mAccessibilityScrollEventPending = false;
+            sendAccessibilityEvent(AccessibilityEvent.TYPE_VIEW_SCROLLED);
+        }
+    };
+
+    /**
+     * Grid metadata exposed to accessibility, the descendant holding the
+     * cells and how deep below it the cells are.
+     */
+    private AccessibilityGridAdapter mAccessibilityGridAdapter;
+    private ViewGroup mAccessibilityGridContainer;
+    private int mAccessibilityGridDepth = 1;
+    private AccessibilityManager mAccessibilityManager;
+    private View.AccessibilityDelegate mGridCellDelegate;
+
+    /**
+     * Views we hid from accessibility because they were off screen.
+     */
+    private final HashSet<View> mAccessibilityHiddenViews = new HashSet<View>();
+
+    /**
+     * Cells we gave our delegate to, weakly held since cells come and go.
+     */
+    private final Set<View> mGridDelegateViews = Collections.newSetFromMap(
+            new WeakHashMap<View, Boolean>());
+
     private int mTouchSlop;
     private int mMinimumVelocity;
     private int mMaximumVelocity;
 
-    private int mOverscrollDistance;
-    private int mOverflingDistance;
+    private int mOverscrollDistanceX;
+    private int mOverscrollDistanceY;
+    private int mOverflingDistanceX;
+    private int mOverflingDistanceY;
+
+    /**
+     * Over-scroll mode of each axis. These are set from the constructor of
+     * View, through setOverScrollMode, so they must not have initializers.
+     */
+    private int mOverScrollModeX;
+    private int mOverScrollModeY;
+
+    /**
+     * Whether the content is larger than the viewport on each axis, cached on
+     * layout so the touch and fling paths don't recompute the ranges.
+     */
+    private boolean mCanScrollX;
+    private boolean mCanScrollY;
 
     /**
      * ID of the active pointer. This is used to retain consistency during
@@ -191,7 +623,7 @@ public class DualScrollView extends FrameLayout {
 
         final int length = getVerticalFadingEdgeLength();
         final int bottomEdge = getHeight() - getPaddingBottom();
-        final int span = getChildAt(0).getBottom() - getScrollY() - bottomEdge;
+        final int span = getContentBottom() - getScrollY() - bottomEdge;
         if (span < length) {
             return span / (float) length;
         }
@@ -218,7 +650,7 @@ public class DualScrollView extends FrameLayout {
         }
         final int length = getHorizontalFadingEdgeLength();
         final int rightEdge = getWidth() - getPaddingRight();
-        final int span = getChildAt(0).getRight() - getScrollX() - rightEdge;
+        final int span = getContentRight() - getScrollX() - rightEdge;
         if (span < length) {
             return span / (float) length;
         }
@@ -247,8 +679,14 @@ public class DualScrollView extends FrameLayout {
         mTouchSlop = configuration.getScaledTouchSlop();
         mMinimumVelocity = configuration.getScaledMinimumFlingVelocity();
         mMaximumVelocity = configuration.getScaledMaximumFlingVelocity();
-        mOverscrollDistance = configuration.getScaledOverscrollDistance();
-        mOverflingDistance = configuration.getScaledOverflingDistance();
+        mOverscrollDistanceX = mOverscrollDistanceY = configuration.getScaledOverscrollDistance();
+        mOverflingDistanceX = mOverflingDistanceY = configuration.getScaledOverflingDistance();
+        mDensity = getContext().getResources().getDisplayMetrics().density;
+        mFastScrollThickness = (int) (FAST_SCROLL_THICKNESS * mDensity + 0.5f);
+        mFastScrollMinLength = (int) (FAST_SCROLL_MIN_LENGTH * mDensity + 0.5f);
+        mFastScrollTouchWidth = (int) (FAST_SCROLL_TOUCH_WIDTH * mDensity + 0.5f);
+        mFastScrollPuckSize = (int) (FAST_SCROLL_PUCK_SIZE * mDensity + 0.5f);
+        mFastScrollPaint.setColor(DEFAULT_FAST_SCROLL_COLOR);
     }
 
     @Override
@@ -297,7 +735,7 @@ public class DualScrollView extends FrameLayout {
     private boolean canScrollH() {
         View child = getChildAt(0);
         if (child != null) {
-            int childWidth = child.getWidth();
+            int childWidth = getContentWidth();
             return (getWidth() < childWidth + getPaddingLeft()
                             + getPaddingRight());
         }
@@ -306,7 +744,7 @@ public class DualScrollView extends FrameLayout {
     private boolean canScrollV() {
         View child = getChildAt(0);
         if (child != null) {
-            int childHeight = child.getHeight();
+            int childHeight = getContentHeight();
             return (getHeight() < childHeight + getPaddingTop()
                     + getPaddingBottom());
         }
@@ -341,20 +779,90 @@ public class DualScrollView extends FrameLayout {
     }
 
     /**
-     * @return Whether arrow scrolling will animate its transition.
+     * @return Whether arrow and mouse wheel scrolling will animate its transition.
      */
     public boolean isSmoothScrollingEnabled() {
         return mSmoothScrollingEnabled;
     }
 
     /**
-     * Set whether arrow scrolling will animate its transition.
-     * @param smoothScrollingEnabled whether arrow scrolling will animate its transition
+     * Set whether arrow and mouse wheel scrolling will animate its transition.
+     * @param smoothScrollingEnabled whether arrow and mouse wheel scrolling will animate its transition
      */
     public void setSmoothScrollingEnabled(boolean smoothScrollingEnabled) {
         mSmoothScrollingEnabled = smoothScrollingEnabled;
     }
 
+    /**
+     * @return Whether the child is promoted to a hardware layer during drags and flings.
+     */
+    public boolean isAutoHardwareLayerEnabled() {
+        return mAutoHardwareLayerEnabled;
+    }
+
+    /**
+     * Set whether the child should be promoted to a hardware layer when a drag
+     * or a fling starts, and demoted once the scroll settles. The child is not
+     * promoted while its content is changing (layout pending), as the layer
+     * would then have to be redrawn on every frame anyway.
+     * Only has an effect on hardware accelerated windows.
+     *
+     * @param enabled whether to promote the child during drags and flings
+     */
+    public void setAutoHardwareLayerEnabled(boolean enabled) {
+        if (enabled != mAutoHardwareLayerEnabled) {
+            mAutoHardwareLayerEnabled = enabled;
+            if (!enabled) {
+                demoteChildLayer();
+            }
+        }
+    }
+
+    /**
+     * @return the number of frames drawn while the child was on a hardware layer
+     */
+    public long getHardwareLayerFrameCount() {
+        return mLayerFrameCount;
+    }
+
+    /**
+     * @return the number of times the child was promoted to a hardware layer
+     */
+    public long getHardwareLayerPromotionCount() {
+        return mLayerPromotionCount;
+    }
+
+    public void resetHardwareLayerStats() {
+        mLayerFrameCount = 0;
+        mLayerPromotionCount = 0;
+    }
+
+    private void promoteChildLayer() {
+        if (!mAutoHardwareLayerEnabled || mChildLayerPromoted || !HONEYCOMB_OR_GREATER
+                || getChildCount() == 0 || !isHardwareAccelerated()) {
+            return;
+        }
+        final View child = getChildAt(0);
+        // skip while the content is changing, and never override a layer set by the app
+        if (mIsLayoutDirty || child.isLayoutRequested()
+                || child.getLayerType() != LAYER_TYPE_NONE) {
+            return;
+        }
+        child.setLayerType(LAYER_TYPE_HARDWARE, null);
+        mChildLayerPromoted = true;
+        mLayerPromotionCount++;
+    }
+
+    private void demoteChildLayer() {
+        if (!mChildLayerPromoted) {
+            return;
+        }
+        mChildLayerPromoted = false;
+        if (getChildCount() > 0) {
+            getChildAt(0).setLayerType(LAYER_TYPE_NONE, null);
+        }
+    }
+
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
@@ -416,33 +924,53 @@ public class DualScrollView extends FrameLayout {
             return false;
         }
 
+        if (mContinuousKeyScrollEnabled) {
+            final int direction = getArrowKeyDirection(event.getKeyCode());
+            if (direction != 0 && !event.isAltPressed()) {
+                if (event.getAction() == KeyEvent.ACTION_UP) {
+                    if (direction == mKeyScrollDirection) {
+                        stopKeyScroll();
+                        return true;
+                    }
+                } else if (event.getAction() == KeyEvent.ACTION_DOWN && event.getRepeatCount() > 0) {
+                    // the key is held: scroll continuously, repeats only keep it
+                    // going, or start it again if the content can move again
+                    if (direction != mKeyScrollDirection && canKeyScroll(direction)) {
+                        startKeyScroll(direction);
+                    }
+                    return true;
+                }
+            }
+        }
+
         boolean handled = false;
         if (event.getAction() == KeyEvent.ACTION_DOWN) {
+            final int repeatCount = event.getRepeatCount();
             switch (event.getKeyCode()) {
                 case KeyEvent.KEYCODE_DPAD_UP:
                     if (!event.isAltPressed()) {
-                        handled = arrowScroll(View.FOCUS_UP, false);
+                        handled = arrowScroll(View.FOCUS_UP, repeatCount);
                     } else {
                         handled = fullScroll(View.FOCUS_UP, false);
                     }
                     break;
                 case KeyEvent.KEYCODE_DPAD_DOWN:
                     if (!event.isAltPressed()) {
-                        handled = arrowScroll(View.FOCUS_DOWN, false);
+                        handled = arrowScroll(View.FOCUS_DOWN, repeatCount);
                     } else {
                         handled = fullScroll(View.FOCUS_DOWN, false);
                     }
                     break;
                 case KeyEvent.KEYCODE_DPAD_LEFT:
                     if (!event.isAltPressed()) {
-                        handled = arrowScroll(View.FOCUS_LEFT, true);
+                        handled = arrowScroll(View.FOCUS_LEFT, repeatCount);
                     } else {
                         handled = fullScroll(View.FOCUS_LEFT, true);
                     }
                     break;
                 case KeyEvent.KEYCODE_DPAD_RIGHT:
                     if (!event.isAltPressed()) {
-                        handled = arrowScroll(View.FOCUS_RIGHT, true);
+                        handled = arrowScroll(View.FOCUS_RIGHT, repeatCount);
                     } else {
                         handled = fullScroll(View.FOCUS_RIGHT, true);
                     }
@@ -450,20 +978,147 @@ public class DualScrollView extends FrameLayout {
                 case KeyEvent.KEYCODE_SPACE:
                     pageScroll(event.isShiftPressed() ? View.FOCUS_UP : View.FOCUS_DOWN, false);
                     break;
+                case KeyEvent.KEYCODE_PAGE_UP:
+                    // shift pages horizontally
+                    handled = event.isShiftPressed() ? pageScroll(View.FOCUS_LEFT, true)
+                            : pageScroll(View.FOCUS_UP, false);
+                    break;
+                case KeyEvent.KEYCODE_PAGE_DOWN:
+                    handled = event.isShiftPressed() ? pageScroll(View.FOCUS_RIGHT, true)
+                            : pageScroll(View.FOCUS_DOWN, false);
+                    break;
+                case KeyEvent.KEYCODE_MOVE_HOME:
+                    handled = event.isShiftPressed() ? fullScroll(View.FOCUS_LEFT, true)
+                            : fullScroll(View.FOCUS_UP, false);
+                    break;
+                case KeyEvent.KEYCODE_MOVE_END:
+                    handled = event.isShiftPressed() ? fullScroll(View.FOCUS_RIGHT, true)
+                            : fullScroll(View.FOCUS_DOWN, false);
+                    break;
             }
         }
         return handled;
     }
 
+    private static int getArrowKeyDirection(int keyCode) {
+        switch (keyCode) {
+            case KeyEvent.KEYCODE_DPAD_UP:
+                return View.FOCUS_UP;
+            case KeyEvent.KEYCODE_DPAD_DOWN:
+                return View.FOCUS_DOWN;
+            case KeyEvent.KEYCODE_DPAD_LEFT:
+                return View.FOCUS_LEFT;
+            case KeyEvent.KEYCODE_DPAD_RIGHT:
+                return View.FOCUS_RIGHT;
+        }
+        return 0;
+    }
+
+    /**
+     * @return Whether holding an arrow key scrolls continuously.
+     */
+    public boolean isContinuousKeyScrollEnabled() {
+        return mContinuousKeyScrollEnabled;
+    }
+
+    /**
+     * Set whether holding an arrow key scrolls continuously. The first press
+     * behaves as usual, then while the key is held the content scrolls on
+     * every frame at a velocity that ramps up with the hold time, until the
+     * key is released.
+     *
+     * @param enabled whether holding an arrow key scrolls continuously
+     */
+    public void setContinuousKeyScrollEnabled(boolean enabled) {
+        mContinuousKeyScrollEnabled = enabled;
+        if (!enabled) {
+            stopKeyScroll();
+        }
+    }
+
+    private void startKeyScroll(int direction) {
+        if (!mScroller.isFinished()) {
+            mScroller.abortAnimation();
+        }
+        abortQueuedScroll();
+        mKeyScrollDirection = direction;
+        mKeyScrollStartTime = AnimationUtils.currentAnimationTimeMillis();
+        mKeyScrollLastTime = mKeyScrollStartTime;
+        mKeyScrollResidual = 0;
+        setScrollState(SCROLL_STATE_SETTLING);
+        mFramePump.schedule();
+    }
+
+    private void stopKeyScroll() {
+        if (mKeyScrollDirection != 0) {
+            mKeyScrollDirection = 0;
+            updateIdleState();
+        }
+    }
+
+    /**
+     * Advances the continuous key scroll by one frame.
+     *
+     * @return true if it needs another frame
+     */
+    private boolean advanceKeyScroll() {
+        if (mKeyScrollDirection == 0) {
+            return false;
+        }
+        final long now = AnimationUtils.currentAnimationTimeMillis();
+        final float holdSeconds = (now - mKeyScrollStartTime) / 1000f;
+        final float velocity = Math.min(KEY_SCROLL_MAX_VELOCITY,
+                KEY_SCROLL_BASE_VELOCITY + KEY_SCROLL_ACCELERATION * holdSeconds) * mDensity;
+        final float distance = velocity * (now - mKeyScrollLastTime) / 1000f + mKeyScrollResidual;
+        mKeyScrollLastTime = now;
+        final int step = (int) distance;
+        mKeyScrollResidual = distance - step;
+        if (step == 0) {
+            return true;
+        }
+        final boolean horizontal = isHorizontalDirection(mKeyScrollDirection);
+        final int delta = isBackwardDirection(mKeyScrollDirection) ? -step : step;
+        final int oldX = getScrollX();
+        final int oldY = getScrollY();
+        scrollTo(horizontal ? oldX + delta : oldX, horizontal ? oldY : oldY + delta);
+        if (oldX == getScrollX() && oldY == getScrollY()) {
+            // reached the end of the content, nothing moves anymore so go
+            // idle, the next key repeat starts again if it can move
+            mKeyScrollDirection = 0;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the content is not at its end in the given direction
+     */
+    private boolean canKeyScroll(int direction) {
+        final boolean backward = isBackwardDirection(direction);
+        if (isHorizontalDirection(direction)) {
+            return backward ? getScrollX() > 0 : getScrollX() < getScrollRangeX();
+        }
+        return backward ? getScrollY() > 0 : getScrollY() < getScrollRangeY();
+    }
+
+    @Override
+    public void onWindowFocusChanged(boolean hasWindowFocus) {
+        super.onWindowFocusChanged(hasWindowFocus);
+        if (!hasWindowFocus) {
+            // we would not get the key up
+            stopKeyScroll();
+        }
+    }
+
     private boolean inChild(int x, int y) {
         if (getChildCount() > 0) {
             final int scrollX = getScrollX();
             final int scrollY = getScrollY();
             final View child = getChildAt(0);
             return !(y < child.getTop() - scrollY
-                    || y >= child.getBottom() - scrollY
+                    || y >= getContentBottom() - scrollY
                     || x < child.getLeft() - scrollX
-                    || x >= child.getRight() - scrollX);
+                    || x >= getContentRight() - scrollX);
         }
         return false;
     }
@@ -498,26 +1153,128 @@ public class DualScrollView extends FrameLayout {
     }
 
 
-    @Override
-    public boolean onInterceptTouchEvent(MotionEvent ev) {
-        /*
-         * This method JUST determines whether we want to intercept the motion.
-         * If we return true, onMotionEvent will be called and we do the actual
-         * scrolling there.
-         */
+    /**
+     * When enabled, which is the default, a drag is left to the child under
+     * the pointer if that child can scroll its own content in the direction
+     * of the drag, for example a horizontal carousel in the content. Children
+     * are only asked once per gesture, when it starts. Only scroll containers
+     * and view groups are asked, a plain view reporting a scroll range, like
+     * a single line TextView with overflowing text, doesn't scroll on touch.
+     * Only has an effect on Ice Cream Sandwich and up.
+     */
+    public void setChildAwareInterceptionEnabled(boolean enabled) {
+        mChildAwareInterception = enabled;
+    }
 
-        /*
-        * Shortcut the most recurring case: the user is in the dragging
-        * state and he is moving his finger.  We want to intercept this
-        * motion.
-        */
-        final int action = ev.getAction();
-        if ((action == MotionEvent.ACTION_MOVE) && (mIsBeingDragged)) {
-            return true;
+    public boolean isChildAwareInterceptionEnabled() {
+        return mChildAwareInterception;
+    }
+
+    /**
+     * @param x the position of the pointer in this view
+     * @param y the position of the pointer in this view
+     * @return the CHILD_SCROLL_* flags of the views under the pointer
+     */
+    private int findChildScrollDirections(float x, float y) {
+        if (!ICE_CREAM_OR_GREATER || getChildCount() == 0) {
+            return 0;
         }
+        final View child = getChildAt(0);
+        return findScrollDirections(child, x + getScrollX() - child.getLeft(),
+                y + getScrollY() - child.getTop());
+    }
 
-        /*
-         * Don't try to intercept touch if we can't scroll anyway.
+    /**
+     * Walks down the views under a point, topmost first. Transformations of
+     * the views are not taken into account.
+     *
+     * @param x the position of the point in the view
+     * @param y the position of the point in the view
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private static int findScrollDirections(View view, float x, float y) {
+        int directions = 0;
+        // views that are neither can report a range they don't scroll on touch
+        if (view instanceof ViewGroup || view.isScrollContainer()) {
+            if (view.canScrollHorizontally(-1)) {
+                directions |= CHILD_SCROLL_LEFT;
+            }
+            if (view.canScrollHorizontally(1)) {
+                directions |= CHILD_SCROLL_RIGHT;
+            }
+            if (view.canScrollVertically(-1)) {
+                directions |= CHILD_SCROLL_UP;
+            }
+            if (view.canScrollVertically(1)) {
+                directions |= CHILD_SCROLL_DOWN;
+            }
+        }
+        if (view instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) view;
+            final float localX = x + group.getScrollX();
+            final float localY = y + group.getScrollY();
+            for (int i = group.getChildCount() - 1; i >= 0; i--) {
+                final View child = group.getChildAt(i);
+                if (child.getVisibility() == VISIBLE
+                        && localX >= child.getLeft() && localX < child.getRight()
+                        && localY >= child.getTop() && localY < child.getBottom()) {
+                    directions |= findScrollDirections(child, localX - child.getLeft(),
+                            localY - child.getTop());
+                    break;
+                }
+            }
+        }
+        return directions;
+    }
+
+    /**
+     * @param dx the motion of the pointer since the down event on the X axis
+     * @param dy the motion of the pointer since the down event on the Y axis
+     * @return true if a child under the pointer can scroll along the main
+     *         axis of the motion
+     */
+    private boolean isChildScrollingTowards(float dx, float dy) {
+        final int directions = mChildScrollDirections;
+        if (directions == 0) {
+            return false;
+        }
+        // moving the finger left scrolls the content to the right
+        if (Math.abs(dx) >= Math.abs(dy)) {
+            return (directions & (dx < 0 ? CHILD_SCROLL_RIGHT : CHILD_SCROLL_LEFT)) != 0;
+        }
+        return (directions & (dy < 0 ? CHILD_SCROLL_DOWN : CHILD_SCROLL_UP)) != 0;
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent ev) {
+        /*
+         * This method JUST determines whether we want to intercept the motion.
+         * If we return true, onMotionEvent will be called and we do the actual
+         * scrolling there.
+         */
+
+        /*
+        * Shortcut the most recurring case: the user is in the dragging
+        * state and he is moving his finger.  We want to intercept this
+        * motion.
+        */
+        final int action = ev.getAction();
+        if ((action == MotionEvent.ACTION_MOVE) && (mIsBeingDragged)) {
+            return true;
+        }
+
+        if (mChildOwnsGesture && (action & MotionEvent.ACTION_MASK) == MotionEvent.ACTION_MOVE) {
+            return false;
+        }
+
+        // grabbing a fast scroll thumb always takes the gesture from the children
+        if ((mFastScrollEnabled || mMinimap != null) && (action & MotionEvent.ACTION_MASK) == MotionEvent.ACTION_DOWN
+                && findFastScrollTarget(ev.getX(), ev.getY()) != FAST_SCROLL_NONE) {
+            return true;
+        }
+
+        /*
+         * Don't try to intercept touch if we can't scroll anyway.
          */
         if (!canScroll()) {
             return false;
@@ -547,12 +1304,21 @@ public class DualScrollView extends FrameLayout {
                     break;
                 }
 
-                final int x = (int) ev.getX(pointerIndex);
-                final int y = (int) ev.getY(pointerIndex);
-                final int xDiff = Math.abs(x - mLastMotionX);
-                final int yDiff = Math.abs(y - mLastMotionY);
+                final float x = ev.getX(pointerIndex);
+                final float y = ev.getY(pointerIndex);
+                final float xDiff = Math.abs(x - mLastMotionX);
+                final float yDiff = Math.abs(y - mLastMotionY);
+                if ((yDiff > mTouchSlop || xDiff > mTouchSlop)
+                        && isChildScrollingTowards(x - mLastMotionX, y - mLastMotionY)) {
+                    // leave the whole gesture to the child, without a cancel
+                    // and redispatch cycle
+                    mChildOwnsGesture = true;
+                    break;
+                }
                 if (yDiff > mTouchSlop || xDiff > mTouchSlop) {
                     mIsBeingDragged = true;
+                    promoteChildLayer();
+                    setScrollState(SCROLL_STATE_DRAGGING);
                     mLastMotionX = x;
                     mLastMotionY = y;
                     initVelocityTrackerIfNotExists();
@@ -569,8 +1335,8 @@ public class DualScrollView extends FrameLayout {
             }
 
             case MotionEvent.ACTION_DOWN: {
-                final int x = (int) ev.getX();
-                final int y = (int) ev.getY();
+                final float x = ev.getX();
+                final float y = ev.getY();
                 if (!inChild((int) x, (int) y)) {
                     mIsBeingDragged = false;
                     recycleVelocityTracker();
@@ -583,7 +1349,11 @@ public class DualScrollView extends FrameLayout {
                  */
                 mLastMotionX = x;
                 mLastMotionY = y;
+                mDragResidualX = mDragResidualY = 0;
                 mActivePointerId = ev.getPointerId(0);
+                mChildOwnsGesture = false;
+                mChildScrollDirections = mChildAwareInterception
+                        ? findChildScrollDirections(x, y) : 0;
 
                 initOrResetVelocityTracker();
                 mVelocityTracker.addMovement(ev);
@@ -592,7 +1362,10 @@ public class DualScrollView extends FrameLayout {
                 * otherwise don't.  mScroller.isFinished should be false when
                 * being flinged.
                 */
-                mIsBeingDragged = !mScroller.isFinished();
+                mIsBeingDragged = !mScroller.isFinished() || isElasticSpringRunning();
+                if (mIsBeingDragged) {
+                    setScrollState(SCROLL_STATE_DRAGGING);
+                }
 //                if (mIsBeingDragged && mScrollStrictSpan == null) {
 //                    mScrollStrictSpan = StrictMode.enterCriticalSpan("ScrollView-scroll");
 //                }
@@ -603,10 +1376,12 @@ public class DualScrollView extends FrameLayout {
             case MotionEvent.ACTION_UP:
                 /* Release the drag */
                 mActivePointerId = INVALID_POINTER;
+                mChildOwnsGesture = false;
                 recycleVelocityTracker();
                 if (mIsBeingDragged) {
                     mIsBeingDragged = false;
                     springBack();
+                    updateIdleState();
                 }
                 
                 break;
@@ -629,6 +1404,10 @@ public class DualScrollView extends FrameLayout {
     	{
     		super.postInvalidateOnAnimation();
     	}
+    	else
+    	{
+    		postInvalidateDelayed(FALLBACK_FRAME_DELAY);
+    	}
     }
     
     @SuppressWarnings({"UnusedParameters"})
@@ -637,23 +1416,13 @@ public class DualScrollView extends FrameLayout {
             int scrollRangeX, int scrollRangeY,
             int maxOverScrollX, int maxOverScrollY,
             boolean isTouchEvent) {
-        final int overScrollMode = getOverScrollMode();
-        final boolean canScrollHorizontal =
-                computeHorizontalScrollRange() > computeHorizontalScrollExtent();
-        final boolean canScrollVertical =
-                computeVerticalScrollRange() > computeVerticalScrollExtent();
-        final boolean overScrollHorizontal = overScrollMode == OVER_SCROLL_ALWAYS ||
-                (overScrollMode == OVER_SCROLL_IF_CONTENT_SCROLLS && canScrollHorizontal);
-        final boolean overScrollVertical = overScrollMode == OVER_SCROLL_ALWAYS ||
-                (overScrollMode == OVER_SCROLL_IF_CONTENT_SCROLLS && canScrollVertical);
-
         int newScrollX = scrollX + deltaX;
-        if (!overScrollHorizontal) {
+        if (!isOverScrollEnabledX()) {
             maxOverScrollX = 0;
         }
 
         int newScrollY = scrollY + deltaY;
-        if (!overScrollVertical) {
+        if (!isOverScrollEnabledY()) {
             maxOverScrollY = 0;
         }
 
@@ -688,15 +1457,26 @@ public class DualScrollView extends FrameLayout {
     
     private void springBack() 
     {
+        if (mOverScrollStyle == OVER_SCROLL_STYLE_ELASTIC) {
+            if (startElasticSpring(0, 0)) {
+                setScrollState(SCROLL_STATE_SETTLING);
+                mFramePump.schedule();
+            }
+            return;
+        }
     	if (mScroller.springBack(getScrollX(), getScrollY(), 0, getScrollRangeX(), 0,
                 getScrollRangeY())) {
-            postInvalidateOnAnimation();
+            setScrollState(SCROLL_STATE_SETTLING);
+            mFramePump.schedule();
         }
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent ev) {
 		shouldClampScroll = true;
+        if ((mFastScrollEnabled || mMinimap != null) && onFastScrollTouchEvent(ev)) {
+            return true;
+        }
         initVelocityTrackerIfNotExists();
         mVelocityTracker.addMovement(ev);
 
@@ -708,17 +1488,21 @@ public class DualScrollView extends FrameLayout {
                 if (getChildCount() == 0) {
                     return false;
                 }
-                if ((mIsBeingDragged = !mScroller.isFinished())) {
+                if ((mIsBeingDragged = !mScroller.isFinished() || isElasticSpringRunning())) {
                     final ViewParent parent = getParent();
                     if (parent != null) {
                         parent.requestDisallowInterceptTouchEvent(true);
                     }
                 }
 
+                abortQueuedScroll();
+                mKeyScrollDirection = 0;
+
                 /*
                  * If being flinged and user touches, stop the fling. isFinished
                  * will be false if being flinged.
                  */
+                stopElasticSpring();
                 if (!mScroller.isFinished()) {
                     mScroller.abortAnimation();
 //                    if (mFlingStrictSpan != null) {
@@ -726,10 +1510,16 @@ public class DualScrollView extends FrameLayout {
 //                        mFlingStrictSpan = null;
 //                    }
                 }
+                if (mIsBeingDragged) {
+                    setScrollState(SCROLL_STATE_DRAGGING);
+                } else {
+                    updateIdleState();
+                }
 
                 // Remember where the motion event started
-                mLastMotionX = (int) ev.getX();
-                mLastMotionY = (int) ev.getY();
+                mLastMotionX = ev.getX();
+                mLastMotionY = ev.getY();
+                mDragResidualX = mDragResidualY = 0;
                 mActivePointerId = ev.getPointerId(0);
                 break;
             }
@@ -740,31 +1530,33 @@ public class DualScrollView extends FrameLayout {
                     break;
                 }
                 
-                final int x = (int) ev.getX(activePointerIndex);
-                final int y = (int) ev.getY(activePointerIndex);
-                int deltaX = mLastMotionX - x;
-                int deltaY = mLastMotionY - y;
-                if (rangeX == 0) deltaX = 0;
-                if (rangeY == 0) deltaY = 0;
-                if (!mIsBeingDragged && (Math.abs(deltaX) > mTouchSlop || Math.abs(deltaY) > mTouchSlop)) {
+                final float x = ev.getX(activePointerIndex);
+                final float y = ev.getY(activePointerIndex);
+                float motionX = mLastMotionX - x;
+                float motionY = mLastMotionY - y;
+                if (rangeX == 0) motionX = 0;
+                if (rangeY == 0) motionY = 0;
+                if (!mIsBeingDragged && (Math.abs(motionX) > mTouchSlop || Math.abs(motionY) > mTouchSlop)) {
                     final ViewParent parent = getParent();
                     if (parent != null) {
                         parent.requestDisallowInterceptTouchEvent(true);
                     }
                     mIsBeingDragged = true;
-                    if (deltaY != 0) {
-	                    if (deltaY > 0) {
-	                        deltaY -= mTouchSlop;
+                    promoteChildLayer();
+                    setScrollState(SCROLL_STATE_DRAGGING);
+                    if (motionY != 0) {
+	                    if (motionY > 0) {
+	                        motionY = Math.max(0, motionY - mTouchSlop);
 	                    } else {
-	                       deltaY += mTouchSlop;
+	                       motionY = Math.min(0, motionY + mTouchSlop);
 	                    }
                     }
 
-                    if (deltaX != 0) {
-	                    if (deltaX > 0) {
-	                        deltaX -= mTouchSlop;
+                    if (motionX != 0) {
+	                    if (motionX > 0) {
+	                        motionX = Math.max(0, motionX - mTouchSlop);
 	                    } else {
-	                        deltaX += mTouchSlop;
+	                        motionX = Math.min(0, motionX + mTouchSlop);
 	                    }
                     }
                 }
@@ -773,59 +1565,73 @@ public class DualScrollView extends FrameLayout {
                     mLastMotionX = x;
                     mLastMotionY = y;
 
+                    // only whole pixels are scrolled, the rest is carried over
+                    mDragResidualX += motionX;
+                    mDragResidualY += motionY;
+                    int deltaX = (int) mDragResidualX;
+                    int deltaY = (int) mDragResidualY;
+                    mDragResidualX -= deltaX;
+                    mDragResidualY -= deltaY;
+                    if (deltaX == 0 && deltaY == 0) {
+                        break;
+                    }
+
                     final int oldX = getScrollX();
                     final int oldY = getScrollY();
                     
-                    final int overscrollMode = getOverScrollMode();
-                    
-                    final boolean forceOverscroll = overscrollMode == OVER_SCROLL_ALWAYS;
-                    final boolean canOverscroll = ICE_CREAM_OR_GREATER && (forceOverscroll || overscrollMode == OVER_SCROLL_IF_CONTENT_SCROLLS);
-                    
+                    int maxOverScrollX = mOverscrollDistanceX;
+                    int maxOverScrollY = mOverscrollDistanceY;
+                    if (mOverScrollStyle == OVER_SCROLL_STYLE_ELASTIC) {
+                        maxOverScrollX = getElasticLimitX();
+                        maxOverScrollY = getElasticLimitY();
+                        if (isOverScrollEnabledX()) {
+                            deltaX = applyElasticResistance(deltaX, oldX, rangeX, maxOverScrollX);
+                        }
+                        if (isOverScrollEnabledY()) {
+                            deltaY = applyElasticResistance(deltaY, oldY, rangeY, maxOverScrollY);
+                        }
+                    }
                     if (overScrollBy(deltaX, deltaY, getScrollX(), getScrollY(),
-                            rangeX, rangeY, mOverscrollDistance, mOverscrollDistance, true)) {
+                            rangeX, rangeY, maxOverScrollX, maxOverScrollY, true)) {
                         // Break our velocity if we hit a scroll barrier.
 //                        mVelocityTracker.clear();
                     }
-                    onScrollChanged(getScrollX(), getScrollY(), oldX, oldY);
-
-                    if (canOverscroll) {
-                        if (rangeX > 0 || forceOverscroll) {
-                            final int pulledToX = oldX + deltaX;
-	                        if (pulledToX < 0) {
-	                            mEdgeGlowLeft.onPull((float) deltaX / getWidth());
-	                            if (!mEdgeGlowRight.isFinished()) {
-	                                mEdgeGlowRight.onRelease();
-	                            }
-	                        } else if (pulledToX > rangeX) {
-	                            mEdgeGlowRight.onPull((float) deltaX / getWidth());
-	                            if (!mEdgeGlowLeft.isFinished()) {
-	                                mEdgeGlowLeft.onRelease();
-	                            }
+
+                    // edge effects only exist on the axes allowed to over-scroll
+                    if (mEdgeGlowLeft != null && isOverScrollEnabledX()) {
+                        final int pulledToX = oldX + deltaX;
+	                    if (pulledToX < 0) {
+	                        mEdgeGlowLeft.onPull((float) deltaX / getWidth());
+	                        if (!mEdgeGlowRight.isFinished()) {
+	                            mEdgeGlowRight.onRelease();
 	                        }
-	
-	                        if (mEdgeGlowLeft != null
-	                                && (!mEdgeGlowLeft.isFinished() || !mEdgeGlowRight.isFinished())) {
-	                            postInvalidateOnAnimation();
+	                    } else if (pulledToX > rangeX) {
+	                        mEdgeGlowRight.onPull((float) deltaX / getWidth());
+	                        if (!mEdgeGlowLeft.isFinished()) {
+	                            mEdgeGlowLeft.onRelease();
 	                        }
-                        }
-                        if (rangeY > 0 || forceOverscroll) {
-                            final int pulledToY = oldY + deltaY;
-	                        if (pulledToY < 0) {
-	                            mEdgeGlowTop.onPull((float) deltaY / getHeight());
-	                            if (!mEdgeGlowBottom.isFinished()) {
-	                                mEdgeGlowBottom.onRelease();
-	                            }
-	                        } else if (pulledToY > rangeY) {
-	                            mEdgeGlowBottom.onPull((float) deltaY / getHeight());
-	                            if (!mEdgeGlowTop.isFinished()) {
-	                                mEdgeGlowTop.onRelease();
-	                            }
+	                    }
+	
+	                    if (!mEdgeGlowLeft.isFinished() || !mEdgeGlowRight.isFinished()) {
+	                        postInvalidateOnAnimation();
+	                    }
+                    }
+                    if (mEdgeGlowTop != null && isOverScrollEnabledY()) {
+                        final int pulledToY = oldY + deltaY;
+	                    if (pulledToY < 0) {
+	                        mEdgeGlowTop.onPull((float) deltaY / getHeight());
+	                        if (!mEdgeGlowBottom.isFinished()) {
+	                            mEdgeGlowBottom.onRelease();
 	                        }
-	                        if (mEdgeGlowTop != null
-	                                && (!mEdgeGlowTop.isFinished() || !mEdgeGlowBottom.isFinished())) {
-	                            postInvalidateOnAnimation();
+	                    } else if (pulledToY > rangeY) {
+	                        mEdgeGlowBottom.onPull((float) deltaY / getHeight());
+	                        if (!mEdgeGlowTop.isFinished()) {
+	                            mEdgeGlowTop.onRelease();
 	                        }
-                        }
+	                    }
+	                    if (!mEdgeGlowTop.isFinished() || !mEdgeGlowBottom.isFinished()) {
+	                        postInvalidateOnAnimation();
+	                    }
                     }
                 }
                 break;
@@ -859,16 +1665,16 @@ public class DualScrollView extends FrameLayout {
                 break;
             case MotionEvent.ACTION_POINTER_DOWN: {
                 final int index = ev.getActionIndex();
-                mLastMotionX = (int) ev.getX(index);
-                mLastMotionY = (int) ev.getY(index);
+                mLastMotionX = ev.getX(index);
+                mLastMotionY = ev.getY(index);
                 mActivePointerId = ev.getPointerId(index);
                 break;
             }
             case MotionEvent.ACTION_POINTER_UP:
                 onSecondaryPointerUp(ev);
                 final int index = ev.findPointerIndex(mActivePointerId);
-                mLastMotionX = (int) ev.getX(index);
-                mLastMotionY = (int) ev.getY(index);
+                mLastMotionX = ev.getX(index);
+                mLastMotionY = ev.getY(index);
                 break;
         }
         return true;
@@ -883,8 +1689,8 @@ public class DualScrollView extends FrameLayout {
             // active pointer and adjust accordingly.
             // TODO: Make this decision more intelligent.
             final int newPointerIndex = pointerIndex == 0 ? 1 : 0;
-            mLastMotionX = (int) ev.getX(newPointerIndex);
-            mLastMotionY = (int) ev.getY(newPointerIndex);
+            mLastMotionX = ev.getX(newPointerIndex);
+            mLastMotionY = ev.getY(newPointerIndex);
             mActivePointerId = ev.getPointerId(newPointerIndex);
             if (mVelocityTracker != null) {
                 mVelocityTracker.clear();
@@ -892,8 +1698,13 @@ public class DualScrollView extends FrameLayout {
         }
     }
     
+    /**
+     * Gets a scale factor that determines the distance the view should scroll
+     * vertically in response to {@link MotionEvent#ACTION_SCROLL}.
+     * @return The vertical scroll scale factor.
+     */
     protected float getVerticalScrollFactor() {
-        return 1;
+        return WHEEL_SCROLL_DISTANCE * mDensity;
     }
 
     /**
@@ -906,38 +1717,22 @@ public class DualScrollView extends FrameLayout {
         // TODO: Should use something else.
         return getVerticalScrollFactor();
     }
-    
+
     @Override
     public boolean onGenericMotionEvent(MotionEvent event) {
         if ((event.getSource() & InputDevice.SOURCE_CLASS_POINTER) != 0) {
             switch (event.getAction()) {
                 case MotionEvent.ACTION_SCROLL: {
                     if (!mIsBeingDragged) {
-                        final float hscroll = event.getAxisValue(MotionEvent.AXIS_HSCROLL);
-                        final float vscroll = event.getAxisValue(MotionEvent.AXIS_VSCROLL);
-                        if (hscroll != 0 || vscroll != 0) {
-                            final int deltaX = (int) (vscroll * getHorizontalScrollFactor());
-                            final int deltaY = (int) (vscroll * getVerticalScrollFactor());
-                            final int rangeX = getScrollRangeX();
-                            final int rangeY = getScrollRangeY();
-                            int oldScrollX = getScrollX();
-                            int oldScrollY = getScrollY();
-                            int newScrollX = oldScrollX - deltaX;
-                            int newScrollY = oldScrollY - deltaY;
-                            if (newScrollX < 0) {
-                                newScrollX = 0;
-                            } else if (newScrollX > rangeX) {
-                                newScrollX = rangeX;
-                            }
-                            if (newScrollY < 0) {
-                                newScrollY = 0;
-                            } else if (newScrollY > rangeY) {
-                                newScrollY = rangeY;
-                            }
-                            if (newScrollX != oldScrollX || newScrollY != oldScrollY) {
-                                super.scrollTo(newScrollX, newScrollY);
-                                return true;
-                            }
+                        float hscroll = event.getAxisValue(MotionEvent.AXIS_HSCROLL);
+                        float vscroll = event.getAxisValue(MotionEvent.AXIS_VSCROLL);
+                        if (hscroll == 0 && (event.getMetaState() & KeyEvent.META_SHIFT_ON) != 0) {
+                            // shift + wheel scrolls horizontally, wheel up going left
+                            hscroll = -vscroll;
+                            vscroll = 0;
+                        }
+                        if ((hscroll != 0 || vscroll != 0) && onWheelScroll(hscroll, vscroll)) {
+                            return true;
                         }
                     }
                 }
@@ -945,7 +1740,48 @@ public class DualScrollView extends FrameLayout {
         }
         return super.onGenericMotionEvent(event);
     }
-    
+
+    /**
+     * Scrolls in response to mouse wheel or trackpad motion. Fractions of
+     * pixels are accumulated until they make a whole pixel. Wheel notches are
+     * animated, and notches received while the animation runs retarget it
+     * rather than starting a new one; the fractional values of high
+     * resolution devices are applied right away, coalesced once per frame.
+     *
+     * @param hscroll the value of {@link MotionEvent#AXIS_HSCROLL}, positive to the right
+     * @param vscroll the value of {@link MotionEvent#AXIS_VSCROLL}, positive upwards
+     * @return true if the content can move in that direction
+     */
+    private boolean onWheelScroll(float hscroll, float vscroll) {
+        final float deltaX = hscroll * getHorizontalScrollFactor();
+        final float deltaY = -vscroll * getVerticalScrollFactor();
+        final boolean canMoveX = deltaX < 0 ? getScrollX() > 0 : deltaX > 0 && getScrollX() < getScrollRangeX();
+        final boolean canMoveY = deltaY < 0 ? getScrollY() > 0 : deltaY > 0 && getScrollY() < getScrollRangeY();
+        if (!canMoveX && !canMoveY) {
+            mWheelResidualX = mWheelResidualY = 0;
+            return false;
+        }
+        // a change of direction drops what was left of the other one
+        if (Math.signum(deltaX) != Math.signum(mWheelResidualX)) {
+            mWheelResidualX = 0;
+        }
+        if (Math.signum(deltaY) != Math.signum(mWheelResidualY)) {
+            mWheelResidualY = 0;
+        }
+        mWheelResidualX += canMoveX ? deltaX : 0;
+        mWheelResidualY += canMoveY ? deltaY : 0;
+        final int dx = (int) mWheelResidualX;
+        final int dy = (int) mWheelResidualY;
+        mWheelResidualX -= dx;
+        mWheelResidualY -= dy;
+        if (dx != 0 || dy != 0) {
+            final boolean notch = hscroll == (int) hscroll && vscroll == (int) vscroll;
+            queueScroll(dx, dy, true, notch && mSmoothScrollingEnabled, SCROLL_PRIORITY_NORMAL,
+                    WHEEL_SCROLL_DURATION, null, null);
+        }
+        return true;
+    }
+
     protected void invalidateParentIfNeeded() {
         if (HONEYCOMB_OR_GREATER && isHardwareAccelerated() && getParent() instanceof View) {
             ((View) getParent()).invalidate();
@@ -979,27 +1815,65 @@ public class DualScrollView extends FrameLayout {
         if (!isEnabled()) {
             return false;
         }
+        final int viewportWidth = getWidth() - getPaddingRight() - getPaddingLeft();
+        final int viewportHeight = getHeight() - getPaddingBottom() - getPaddingTop();
         switch (action) {
             case AccessibilityNodeInfo.ACTION_SCROLL_FORWARD: {
-                final int viewportWidth = getWidth() - getPaddingRight() - getPaddingLeft();
-                final int viewportHeight = getHeight() - getPaddingBottom() - getPaddingTop();
-                final int targetScrollX = Math.min(getScrollX() + viewportWidth, getScrollRangeX());
-                final int targetScrollY = Math.min(getScrollY() + viewportHeight, getScrollRangeY());
-                if (targetScrollX != getScrollX() || targetScrollY != getScrollY()) {
-                    smoothScrollTo(targetScrollX, targetScrollY);
-                    return true;
+                // read vertically first, then move to the next column
+                if (getScrollY() < getScrollRangeY()) {
+                    return accessibilityScrollBy(0, viewportHeight);
                 }
-            } return false;
+                return accessibilityScrollBy(viewportWidth, 0);
+            }
             case AccessibilityNodeInfo.ACTION_SCROLL_BACKWARD: {
-                final int viewportWidth = getWidth() - getPaddingRight() - getPaddingLeft();
-                final int viewportHeight = getHeight() - getPaddingBottom() - getPaddingTop();
-                final int targetScrollX = Math.max(getScrollX() - viewportWidth, 0);
-                final int targetScrollY = Math.max(getScrollY() - viewportHeight, 0);
-                if (targetScrollX != getScrollX() || targetScrollY != getScrollY()) {
-                    smoothScrollTo(targetScrollX, targetScrollY);
-                    return true;
+                if (getScrollY() > 0) {
+                    return accessibilityScrollBy(0, -viewportHeight);
+                }
+                return accessibilityScrollBy(-viewportWidth, 0);
+            }
+            // only offered from Marshmallow, see onInitializeAccessibilityNodeInfo
+            case android.R.id.accessibilityActionScrollUp:
+                return accessibilityScrollBy(0, -viewportHeight);
+            case android.R.id.accessibilityActionScrollDown:
+                return accessibilityScrollBy(0, viewportHeight);
+            case android.R.id.accessibilityActionScrollLeft:
+                return accessibilityScrollBy(-viewportWidth, 0);
+            case android.R.id.accessibilityActionScrollRight:
+                return accessibilityScrollBy(viewportWidth, 0);
+            case android.R.id.accessibilityActionScrollToPosition:
+                if (arguments == null) {
+                    return false;
                 }
-            } return false;
+                return scrollToAccessibilityCell(
+                        arguments.getInt(AccessibilityNodeInfo.ACTION_ARGUMENT_ROW_INT, -1),
+                        arguments.getInt(AccessibilityNodeInfo.ACTION_ARGUMENT_COLUMN_INT, -1));
+        }
+        return false;
+    }
+
+    private boolean scrollToAccessibilityCell(int row, int column) {
+        final AccessibilityGridAdapter adapter = mAccessibilityGridAdapter;
+        if (adapter == null || row < 0 || column < 0) {
+            return false;
+        }
+        final View cell = adapter.findCellView(row, column);
+        if (cell == null || !isViewDescendantOf(cell, this)) {
+            // not materialized, the size models can still tell where it is
+            return scrollToCell(row, column, CELL_ALIGN_START, false);
+        }
+        uncull(cell);
+        cell.getDrawingRect(mTempRect);
+        offsetDescendantRectToMyCoords(cell, mTempRect);
+        scrollToChildRect(mTempRect, false);
+        return true;
+    }
+
+    private boolean accessibilityScrollBy(int dx, int dy) {
+        final int targetScrollX = Math.max(0, Math.min(getScrollX() + dx, getScrollRangeX()));
+        final int targetScrollY = Math.max(0, Math.min(getScrollY() + dy, getScrollRangeY()));
+        if (targetScrollX != getScrollX() || targetScrollY != getScrollY()) {
+            smoothScrollTo(targetScrollX, targetScrollY);
+            return true;
         }
         return false;
     }
@@ -1013,14 +1887,180 @@ public class DualScrollView extends FrameLayout {
             final int scrollRangeY = getScrollRangeY();
             if (scrollRangeX > 0 || scrollRangeY > 0) {
                 info.setScrollable(true);
-                if (getScrollX() > 0 && getScrollY() > 0) {
+                final boolean canScrollLeft = getScrollX() > 0;
+                final boolean canScrollUp = getScrollY() > 0;
+                final boolean canScrollRight = getScrollX() < scrollRangeX;
+                final boolean canScrollDown = getScrollY() < scrollRangeY;
+                if (canScrollLeft || canScrollUp) {
                     info.addAction(AccessibilityNodeInfo.ACTION_SCROLL_BACKWARD);
                 }
-                if (getScrollX() < scrollRangeX && getScrollY() < scrollRangeY) {
+                if (canScrollRight || canScrollDown) {
                     info.addAction(AccessibilityNodeInfo.ACTION_SCROLL_FORWARD);
                 }
+                if (MARSHMALLOW_OR_GREATER) {
+                    DirectionalAccessibilityActions.add(info, canScrollUp, canScrollDown,
+                            canScrollLeft, canScrollRight, mAccessibilityGridAdapter != null);
+                }
+            }
+        }
+        final AccessibilityGridAdapter adapter = mAccessibilityGridAdapter;
+        if (KITKAT_OR_GREATER && adapter != null) {
+            info.setCollectionInfo(AccessibilityNodeInfo.CollectionInfo.obtain(
+                    adapter.getRowCount(), adapter.getColumnCount(), false));
+        }
+    }
+
+    /**
+     * Exposes the content as a grid to accessibility services. The node of
+     * this view gets the row and column counts, each cell gets its position,
+     * and the cells outside of the viewport are hidden from accessibility so
+     * that services only traverse the visible ones. Scroll-to-position
+     * actions are supported for cells the adapter can find. Only has an
+     * effect on KitKat and up, and the hiding only runs while accessibility
+     * is enabled.
+     * <p>Cells get an accessibility delegate, replacing any they had. Their
+     * delegate is reset to none when the grid is cleared or replaced.</p>
+     *
+     * @param adapter gives the grid metadata, null to stop exposing the grid
+     * @param cellContainer the descendant of this view holding the cells
+     * @param cellDepth how many levels below the container the cells are, for
+     *        example 2 for a row of columns of cells
+     */
+    public void setAccessibilityGrid(AccessibilityGridAdapter adapter,
+            ViewGroup cellContainer, int cellDepth) {
+        restoreAccessibilityHiddenViews();
+        restoreGridCellDelegates();
+        if (!KITKAT_OR_GREATER || adapter == null || cellContainer == null) {
+            mAccessibilityGridAdapter = null;
+            mAccessibilityGridContainer = null;
+            return;
+        }
+        mAccessibilityGridAdapter = adapter;
+        mAccessibilityGridContainer = cellContainer;
+        mAccessibilityGridDepth = Math.max(1, cellDepth);
+        if (mAccessibilityManager == null) {
+            mAccessibilityManager = (AccessibilityManager) getContext().getSystemService(
+                    Context.ACCESSIBILITY_SERVICE);
+        }
+        if (mGridCellDelegate == null) {
+            mGridCellDelegate = new GridCellAccessibilityDelegate();
+        }
+        mCullingUpdatePending = true;
+        updateCulling();
+    }
+
+    private void restoreAccessibilityHiddenViews() {
+        if (mAccessibilityHiddenViews.isEmpty()) {
+            return;
+        }
+        for (View view : mAccessibilityHiddenViews) {
+            if (view.getImportantForAccessibility() == IMPORTANT_FOR_ACCESSIBILITY_NO_HIDE_DESCENDANTS) {
+                view.setImportantForAccessibility(IMPORTANT_FOR_ACCESSIBILITY_AUTO);
+            }
+        }
+        mAccessibilityHiddenViews.clear();
+    }
+
+    /**
+     * Removes our delegate from the cells. The delegate they had before
+     * can't be read below Android 10, so they are left without one.
+     */
+    private void restoreGridCellDelegates() {
+        if (mGridDelegateViews.isEmpty()) {
+            return;
+        }
+        for (View view : mGridDelegateViews) {
+            view.setAccessibilityDelegate(null);
+        }
+        mGridDelegateViews.clear();
+    }
+
+    private void updateAccessibilityGrid() {
+        final ViewGroup container = mAccessibilityGridContainer;
+        if (container == null) {
+            return;
+        }
+        if (!mAccessibilityManager.isEnabled() || !isViewDescendantOf(container, this)) {
+            restoreAccessibilityHiddenViews();
+            return;
+        }
+        final Rect rect = mCullingRect;
+        rect.set(getScrollX() + getPaddingLeft(), getScrollY() + getPaddingTop(),
+                getScrollX() + getWidth() - getPaddingRight(),
+                getScrollY() + getHeight() - getPaddingBottom());
+        offsetRectIntoDescendantCoords(container, rect);
+        updateAccessibilityGridChildren(container, rect, mAccessibilityGridDepth);
+    }
+
+    /**
+     * @param parent the group whose children to hide or show
+     * @param rect the visible area, in the coordinates of parent's children
+     * @param depth how many levels to go down, the cells are at depth 1
+     */
+    private void updateAccessibilityGridChildren(ViewGroup parent, Rect rect, int depth) {
+        final int count = parent.getChildCount();
+        for (int i = 0; i < count; i++) {
+            final View child = parent.getChildAt(i);
+            if (rect.intersects(child.getLeft(), child.getTop(), child.getRight(), child.getBottom())) {
+                if (mAccessibilityHiddenViews.remove(child)
+                        && child.getImportantForAccessibility() == IMPORTANT_FOR_ACCESSIBILITY_NO_HIDE_DESCENDANTS) {
+                    child.setImportantForAccessibility(IMPORTANT_FOR_ACCESSIBILITY_AUTO);
+                }
+                if (depth > 1) {
+                    if (child instanceof ViewGroup) {
+                        final int offsetX = child.getScrollX() - child.getLeft();
+                        final int offsetY = child.getScrollY() - child.getTop();
+                        rect.offset(offsetX, offsetY);
+                        updateAccessibilityGridChildren((ViewGroup) child, rect, depth - 1);
+                        rect.offset(-offsetX, -offsetY);
+                    }
+                } else if (mGridDelegateViews.add(child)) {
+                    child.setAccessibilityDelegate(mGridCellDelegate);
+                }
+            } else if (child.getImportantForAccessibility() == IMPORTANT_FOR_ACCESSIBILITY_AUTO
+                    && !child.hasFocus()) {
+                child.setImportantForAccessibility(IMPORTANT_FOR_ACCESSIBILITY_NO_HIDE_DESCENDANTS);
+                mAccessibilityHiddenViews.add(child);
+            }
+        }
+    }
+
+    /**
+     * Set the minimum time between two {@link AccessibilityEvent#TYPE_VIEW_SCROLLED}
+     * events. Scroll events arriving faster are coalesced into one, sent once
+     * the interval has elapsed and reporting the whole distance scrolled.
+     *
+     * @param interval the interval in milliseconds, 0 to send every event
+     */
+    public void setAccessibilityScrollEventInterval(long interval) {
+        mAccessibilityScrollEventInterval = Math.max(0, interval);
+    }
+
+    public long getAccessibilityScrollEventInterval() {
+        return mAccessibilityScrollEventInterval;
+    }
+
+    @Override
+    public void sendAccessibilityEventUnchecked(AccessibilityEvent event) {
+        if (event.getEventType() == AccessibilityEvent.TYPE_VIEW_SCROLLED) {
+            final long now = SystemClock.uptimeMillis();
+            final long wait = mLastAccessibilityScrollEventTime + mAccessibilityScrollEventInterval - now;
+            if (wait > 0) {
+                if (!mAccessibilityScrollEventPending) {
+                    mAccessibilityScrollEventPending = true;
+                    postDelayed(mSendAccessibilityScrollEvent, wait);
+                }
+                return;
             }
+            mLastAccessibilityScrollEventTime = now;
+            if (PIE_OR_GREATER) {
+                event.setScrollDeltaX(getScrollX() - mLastAccessibilityScrollX);
+                event.setScrollDeltaY(getScrollY() - mLastAccessibilityScrollY);
+            }
+            mLastAccessibilityScrollX = getScrollX();
+            mLastAccessibilityScrollY = getScrollY();
         }
+        super.sendAccessibilityEventUnchecked(event);
     }
 
     @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
@@ -1038,12 +2078,64 @@ public class DualScrollView extends FrameLayout {
         }
     }
 
+    /**
+     * Sets the sizes of the columns and rows of virtualized grid content.
+     * The scroll ranges, clamping, flings and the scrolls bringing a rect on
+     * screen then use the total size of a model instead of the size of the
+     * child on its axis, so the child only needs to materialize the visible
+     * cells. Changing sizes in a model must be followed by
+     * {@link #requestLayout()}.
+     *
+     * @param columns the sizes of the columns, null to use the width of the child
+     * @param rows the sizes of the rows, null to use the height of the child
+     */
+    public void setSizeModels(AxisSizeModel columns, AxisSizeModel rows) {
+        mColumnSizeModel = columns;
+        mRowSizeModel = rows;
+        requestLayout();
+    }
+
+    public AxisSizeModel getColumnSizeModel() {
+        return mColumnSizeModel;
+    }
+
+    public AxisSizeModel getRowSizeModel() {
+        return mRowSizeModel;
+    }
+
+    /**
+     * @return the width of the content, from the column model if there is one
+     */
+    private int getContentWidth() {
+        if (mColumnSizeModel != null) {
+            return mColumnSizeModel.getTotalSize();
+        }
+        return getChildCount() > 0 ? getChildAt(0).getWidth() : 0;
+    }
+
+    /**
+     * @return the height of the content, from the row model if there is one
+     */
+    private int getContentHeight() {
+        if (mRowSizeModel != null) {
+            return mRowSizeModel.getTotalSize();
+        }
+        return getChildCount() > 0 ? getChildAt(0).getHeight() : 0;
+    }
+
+    private int getContentRight() {
+        return (getChildCount() > 0 ? getChildAt(0).getLeft() : 0) + getContentWidth();
+    }
+
+    private int getContentBottom() {
+        return (getChildCount() > 0 ? getChildAt(0).getTop() : 0) + getContentHeight();
+    }
+
     private int getScrollRangeX() {
         int scrollRange = 0;
         if (getChildCount() > 0) {
-            View child = getChildAt(0);
             scrollRange = Math.max(0,
-                    child.getWidth() - (getWidth() - getPaddingRight() - getPaddingLeft()));
+                    getContentWidth() - (getWidth() - getPaddingRight() - getPaddingLeft()));
         }
         return scrollRange;
     }
@@ -1051,36 +2143,43 @@ public class DualScrollView extends FrameLayout {
     private int getScrollRangeY() {
         int scrollRange = 0;
         if (getChildCount() > 0) {
-            View child = getChildAt(0);
             scrollRange = Math.max(0,
-                    child.getHeight() - (getHeight() - getPaddingBottom() - getPaddingTop()));
+                    getContentHeight() - (getHeight() - getPaddingBottom() - getPaddingTop()));
         }
         return scrollRange;
     }
 
     /**
      * <p>
-     * Finds the next focusable component that fits in the specified bounds.
+     * Finds the next focusable component that fits in the specified bounds
+     * along one axis, among the ones visible on the other axis.
      * </p>
      *
-     * @param topFocus look for a candidate is the one at the top of the bounds
-     *                 if topFocus is true, or at the bottom of the bounds if topFocus is
-     *                 false
-     * @param top      the top offset of the bounds in which a focusable must be
+     * @param horizontal true to look along the horizontal axis
+     * @param startFocus look for a candidate is the one at the start (top or
+     *                 left) of the bounds if startFocus is true, or at the end
+     *                 of the bounds if startFocus is false
+     * @param start    the start offset of the bounds in which a focusable must be
      *                 found
-     * @param bottom   the bottom offset of the bounds in which a focusable must
+     * @param end      the end offset of the bounds in which a focusable must
      *                 be found
      * @return the next focusable component in the bounds or null if none can
      *         be found
      */
-    private View findFocusableViewInBounds(boolean topFocus, int top,
-            int bottom, boolean leftFocus, int left, int right) {
-        List<View> focusables = getFocusables(View.FOCUS_FORWARD);
+    private View findFocusableViewInBounds(boolean horizontal, boolean startFocus,
+            int start, int end) {
+        ensureFocusablesCache();
+        final List<View> focusables = mFocusablesCache;
+        final Rect rect = mTempRect;
+        final int otherStart = horizontal ? getScrollY() : getScrollX();
+        final int otherEnd = otherStart + (horizontal ? getHeight() : getWidth());
         View focusCandidate = null;
+        int candidateStart = 0;
+        int candidateEnd = 0;
 
         /*
-         * A fully contained focusable is one where its top is below the bound's
-         * top, and its bottom is above the bound's bottom. A partially
+         * A fully contained focusable is one where its start is after the bound's
+         * start, and its end is before the bound's end. A partially
          * contained focusable is one where some part of it is within the
          * bounds, but it also has some part that is not within bounds. A fully
          * contained focusable is preferred to a partially contained focusable.
@@ -1090,43 +2189,47 @@ public class DualScrollView extends FrameLayout {
         int count = focusables.size();
         for (int i = 0; i < count; i++) {
             View view = focusables.get(i);
-            int viewTop = view.getTop();
-            int viewBottom = view.getBottom();
-            int viewLeft = view.getLeft();
-            int viewRight = view.getRight();
+            if (!view.isFocusable() || !view.isShown()) {
+                // lost its focusability or was hidden since the cache was built
+                continue;
+            }
+            // translations and nested scrolls move views without a layout
+            view.getDrawingRect(rect);
+            offsetDescendantRectToMyCoords(view, rect);
+            final int viewStart = horizontal ? rect.left : rect.top;
+            final int viewEnd = horizontal ? rect.right : rect.bottom;
+            if ((horizontal ? rect.bottom : rect.right) <= otherStart
+                    || (horizontal ? rect.top : rect.left) >= otherEnd) {
+                // not visible on the other axis
+                continue;
+            }
 
-            if (top < viewBottom && viewTop < bottom && left < viewRight
-                    && viewLeft < right) {
+            if (start < viewEnd && viewStart < end) {
                 /*
                  * the focusable is in the target area, it is a candidate for
                  * focusing
                  */
-                final boolean viewIsFullyContained = (top < viewTop)
-                        && (viewBottom < bottom) && (left < viewLeft)
-                        && (viewRight < right);
+                final boolean viewIsFullyContained = (start < viewStart) && (viewEnd < end);
                 if (focusCandidate == null) {
                     /* No candidate, take this one */
                     focusCandidate = view;
+                    candidateStart = viewStart;
+                    candidateEnd = viewEnd;
                     foundFullyContainedFocusable = viewIsFullyContained;
                 } else {
-                    final boolean viewIsCloserToVerticalBoundary = (topFocus && viewTop < focusCandidate
-                            .getTop())
-                            || (!topFocus && viewBottom > focusCandidate
-                                    .getBottom());
-                    final boolean viewIsCloserToHorizontalBoundary = (leftFocus && viewLeft < focusCandidate
-                            .getLeft())
-                            || (!leftFocus && viewRight > focusCandidate
-                                    .getRight());
+                    final boolean viewIsCloserToBoundary =
+                            (startFocus && viewStart < candidateStart)
+                            || (!startFocus && viewEnd > candidateEnd);
                     if (foundFullyContainedFocusable) {
-                        if (viewIsFullyContained
-                                && viewIsCloserToVerticalBoundary
-                                && viewIsCloserToHorizontalBoundary) {
+                        if (viewIsFullyContained && viewIsCloserToBoundary) {
                             /*
                              * We're dealing with only fully contained views, so
                              * it has to be closer to the boundary to beat our
                              * candidate
                              */
                             focusCandidate = view;
+                            candidateStart = viewStart;
+                            candidateEnd = viewEnd;
                         }
                     } else {
                         if (viewIsFullyContained) {
@@ -1135,14 +2238,17 @@ public class DualScrollView extends FrameLayout {
                              * contained view
                              */
                             focusCandidate = view;
+                            candidateStart = viewStart;
+                            candidateEnd = viewEnd;
                             foundFullyContainedFocusable = true;
-                        } else if (viewIsCloserToVerticalBoundary
-                                && viewIsCloserToHorizontalBoundary) {
+                        } else if (viewIsCloserToBoundary) {
                             /*
                              * Partially contained view beats another partially
                              * contained view if it's closer
                              */
                             focusCandidate = view;
+                            candidateStart = viewStart;
+                            candidateEnd = viewEnd;
                         }
                     }
                 }
@@ -1151,6 +2257,71 @@ public class DualScrollView extends FrameLayout {
         return focusCandidate;
     }
 
+    /**
+     * Walks the hierarchy for its focusables if it changed since the last
+     * walk. Views made visible again report themselves through
+     * {@link #focusableViewAvailable(View)}, and views made gone through
+     * {@link #requestLayout()}.
+     */
+    private void ensureFocusablesCache() {
+        if (mFocusablesCacheValid) {
+            return;
+        }
+        mFocusablesCache = getFocusables(View.FOCUS_FORWARD);
+        mFocusablesCacheValid = true;
+    }
+
+    private void invalidateFocusablesCache() {
+        mFocusablesCacheValid = false;
+        mFocusablesCache = null;
+    }
+
+    /**
+     * Makes sure neither the view nor its ancestors are culled, so that it
+     * can take the focus.
+     */
+    private void uncull(View view) {
+        if (mCulledViews.isEmpty()) {
+            return;
+        }
+        while (view != null && view != this) {
+            final ViewParent parent = view.getParent();
+            if (mCulledViews.remove(view) && parent instanceof View) {
+                ((View) parent).invalidate();
+            }
+            view = parent instanceof View ? (View) parent : null;
+        }
+    }
+
+    @Override
+    public void focusableViewAvailable(View v) {
+        invalidateFocusablesCache();
+        super.focusableViewAvailable(v);
+    }
+
+    /**
+     * Converts the legacy up/down directions used with horizontal = true to
+     * left/right.
+     */
+    private static int toAxisDirection(int direction, boolean horizontal) {
+        if (horizontal) {
+            if (direction == View.FOCUS_UP) {
+                return View.FOCUS_LEFT;
+            } else if (direction == View.FOCUS_DOWN) {
+                return View.FOCUS_RIGHT;
+            }
+        }
+        return direction;
+    }
+
+    private static boolean isHorizontalDirection(int direction) {
+        return direction == View.FOCUS_LEFT || direction == View.FOCUS_RIGHT;
+    }
+
+    private static boolean isBackwardDirection(int direction) {
+        return direction == View.FOCUS_UP || direction == View.FOCUS_LEFT;
+    }
+
     /**
      * <p>Handles scrolling in response to a "page up/down" shortcut press. This
      * method will scroll the view by one page up or down and give the focus
@@ -1159,57 +2330,30 @@ public class DualScrollView extends FrameLayout {
      * focus.</p>
      *
      * @param direction the scroll direction: {@link android.view.View#FOCUS_UP}
-     *                  to go one page up or
-     *                  {@link android.view.View#FOCUS_DOWN} to go one page down
+     *                  to go one page up, {@link android.view.View#FOCUS_DOWN}
+     *                  to go one page down, {@link android.view.View#FOCUS_LEFT}
+     *                  or {@link android.view.View#FOCUS_RIGHT}
+     * @param horizontal true to page horizontally, in which case up and down
+     *                  mean left and right
      * @return true if the key event is consumed by this method, false otherwise
      */
     public boolean pageScroll(int direction, boolean horizontal) {
-        if (!horizontal) {
-            boolean down = direction == View.FOCUS_DOWN;
-            int height = getHeight();
-
-            if (down) {
-                mTempRect.top = getScrollY() + height;
-                int count = getChildCount();
-                if (count > 0) {
-                    View view = getChildAt(count - 1);
-                    if (mTempRect.top + height > view.getBottom()) {
-                        mTempRect.top = view.getBottom() - height;
-                    }
-                }
-            } else {
-                mTempRect.top = getScrollY() - height;
-                if (mTempRect.top < 0) {
-                    mTempRect.top = 0;
-                }
-            }
-            mTempRect.bottom = mTempRect.top + height;
-            return scrollAndFocus(direction, mTempRect.top, mTempRect.bottom,
-                    0, 0, 0);
-        }
-        else {
-            boolean right = direction == View.FOCUS_DOWN;
-            int width = getWidth();
-
-            if (right) {
-                mTempRect.left = getScrollX() + width;
-                int count = getChildCount();
-                if (count > 0) {
-                    View view = getChildAt(count - 1);
-                    if (mTempRect.left + width > view.getRight()) {
-                        mTempRect.left = view.getRight() - width;
-                    }
-                }
-            } else {
-                mTempRect.left = getScrollX() - width;
-                if (mTempRect.left < 0) {
-                    mTempRect.left = 0;
+        direction = toAxisDirection(direction, horizontal);
+        horizontal = isHorizontalDirection(direction);
+        final boolean forward = !isBackwardDirection(direction);
+        final int size = horizontal ? getWidth() : getHeight();
+        int start = (horizontal ? getScrollX() : getScrollY()) + (forward ? size : -size);
+        if (forward) {
+            if (getChildCount() > 0) {
+                final int contentEnd = horizontal ? getContentRight() : getContentBottom();
+                if (start + size > contentEnd) {
+                    start = contentEnd - size;
                 }
             }
-            mTempRect.right = mTempRect.left + width;
-            return scrollAndFocus(0, 0, 0, direction, mTempRect.left,
-                    mTempRect.right);
+        } else if (start < 0) {
+            start = 0;
         }
+        return scrollAndFocus(direction, start, start + size);
     }
 
     /**
@@ -1220,162 +2364,160 @@ public class DualScrollView extends FrameLayout {
      * focus.</p>
      *
      * @param direction the scroll direction: {@link android.view.View#FOCUS_UP}
-     *                  to go the top of the view or
-     *                  {@link android.view.View#FOCUS_DOWN} to go the bottom
+     *                  to go the top of the view, {@link android.view.View#FOCUS_DOWN}
+     *                  to go the bottom, {@link android.view.View#FOCUS_LEFT}
+     *                  or {@link android.view.View#FOCUS_RIGHT}
+     * @param horizontal true to scroll horizontally, in which case up and down
+     *                  mean left and right
      * @return true if the key event is consumed by this method, false otherwise
      */
     public boolean fullScroll(int direction, boolean horizontal) {
-        if (!horizontal) {
-            boolean down = direction == View.FOCUS_DOWN;
-            int height = getHeight();
-            mTempRect.top = 0;
-            mTempRect.bottom = height;
-            if (down) {
-                int count = getChildCount();
-                if (count > 0) {
-                    View view = getChildAt(count - 1);
-                    mTempRect.bottom = view.getBottom();
-                    mTempRect.top = mTempRect.bottom - height;
-                }
+        direction = toAxisDirection(direction, horizontal);
+        horizontal = isHorizontalDirection(direction);
+        final int size = horizontal ? getWidth() : getHeight();
+        int start = 0;
+        int end = size;
+        if (!isBackwardDirection(direction)) {
+            if (getChildCount() > 0) {
+                end = horizontal ? getContentRight() : getContentBottom();
+                start = end - size;
             }
-            return scrollAndFocus(direction, mTempRect.top, mTempRect.bottom,
-                    0, 0, 0);
-        } else {
-            boolean right = direction == View.FOCUS_DOWN;
-            int width = getWidth();
-            mTempRect.left = 0;
-            mTempRect.right = width;
-            if (right) {
-                int count = getChildCount();
-                if (count > 0) {
-                    View view = getChildAt(count - 1);
-                    mTempRect.right = view.getBottom();
-                    mTempRect.left = mTempRect.right - width;
-                }
-            }
-            return scrollAndFocus(0, 0, 0, direction, mTempRect.top,
-                    mTempRect.bottom);
         }
+        return scrollAndFocus(direction, start, end);
     }
 
     /**
-     * <p>Scrolls the view to make the area defined by <code>top</code> and
-     * <code>bottom</code> visible. This method attempts to give the focus
-     * to a component visible in this area. If no component can be focused in
-     * the new visible area, the focus is reclaimed by this ScrollView.</p>
+     * <p>Scrolls the view to make the area defined by <code>start</code> and
+     * <code>end</code> along the axis of the direction visible. This method
+     * attempts to give the focus to a component visible in this area. If no
+     * component can be focused in the new visible area, the focus is
+     * reclaimed by this ScrollView.</p>
      *
-     * @param direction the scroll direction: {@link android.view.View#FOCUS_UP}
-     *                  to go upward, {@link android.view.View#FOCUS_DOWN} to downward
-     * @param top       the top offset of the new area to be made visible
-     * @param bottom    the bottom offset of the new area to be made visible
+     * @param direction the scroll direction, one of {@link android.view.View#FOCUS_UP},
+     *                  {@link android.view.View#FOCUS_DOWN}, {@link android.view.View#FOCUS_LEFT}
+     *                  and {@link android.view.View#FOCUS_RIGHT}
+     * @param start     the start offset of the new area to be made visible
+     * @param end       the end offset of the new area to be made visible
      * @return true if the key event is consumed by this method, false otherwise
      */
-    private boolean scrollAndFocus(int directionY, int top, int bottom,
-            int directionX, int left, int right) {
+    private boolean scrollAndFocus(int direction, int start, int end) {
         boolean handled = true;
-        int height = getHeight();
-        int containerTop = getScrollY();
-        int containerBottom = containerTop + height;
-        boolean up = directionY == View.FOCUS_UP;
-        int width = getWidth();
-        int containerLeft = getScrollX();
-        int containerRight = containerLeft + width;
-        boolean leftwards = directionX == View.FOCUS_UP;
-        View newFocused = findFocusableViewInBounds(up, top, bottom, leftwards,
-                left, right);
+        final boolean horizontal = isHorizontalDirection(direction);
+        final boolean backward = isBackwardDirection(direction);
+        final int containerStart = horizontal ? getScrollX() : getScrollY();
+        final int containerEnd = containerStart + (horizontal ? getWidth() : getHeight());
+
+        View newFocused = findFocusableViewInBounds(horizontal, backward, start, end);
         if (newFocused == null) {
             newFocused = this;
+        } else {
+            uncull(newFocused);
         }
-        if ((top >= containerTop && bottom <= containerBottom)
-                || (left >= containerLeft && right <= containerRight)) {
+
+        if (start >= containerStart && end <= containerEnd) {
             handled = false;
         } else {
-            int deltaY = up ? (top - containerTop) : (bottom - containerBottom);
-            int deltaX = leftwards ? (left - containerLeft)
-                    : (right - containerRight);
-            doScroll(deltaX, deltaY);
+            final int delta = backward ? (start - containerStart) : (end - containerEnd);
+            doScroll(horizontal ? delta : 0, horizontal ? 0 : delta);
         }
-        if (newFocused != findFocus() && newFocused.requestFocus(directionY)) {
+
+        if (newFocused != findFocus()) {
+            // we already scroll to the new area, requestChildFocus must not
             mTwoDScrollViewMovedFocus = true;
+            newFocused.requestFocus(direction);
             mTwoDScrollViewMovedFocus = false;
         }
         return handled;
     }
 
     /**
-     * Handle scrolling in response to an up or down arrow click.
+     * Handle scrolling in response to an arrow click.
      *
      * @param direction The direction corresponding to the arrow key that was
      *                  pressed
+     * @param horizontal true if up and down stand for left and right
      * @return True if we consumed the event, false otherwise
      */
     public boolean arrowScroll(int direction, boolean horizontal) {
-        View currentFocused = findFocus();
-        if (currentFocused == this)
-            currentFocused = null;
-        View nextFocused = FocusFinder.getInstance().findNextFocus(this,
-                currentFocused, direction);
+        return arrowScroll(toAxisDirection(direction, horizontal), 0);
+    }
+
+    /**
+     * Handle scrolling in response to an arrow click. The next focusable
+     * view in the direction is looked up once; if it is close enough it is
+     * scrolled into view just enough and given the focus, otherwise the
+     * content is scrolled by a jump which grows as the key repeats.
+     *
+     * @param direction one of {@link android.view.View#FOCUS_UP},
+     *                  {@link android.view.View#FOCUS_DOWN}, {@link android.view.View#FOCUS_LEFT}
+     *                  and {@link android.view.View#FOCUS_RIGHT}
+     * @param repeatCount the repeat count of the key event
+     * @return True if we consumed the event, false otherwise
+     */
+    private boolean arrowScroll(int direction, int repeatCount) {
+        final boolean horizontal = isHorizontalDirection(direction);
+        final boolean backward = isBackwardDirection(direction);
+        View currentFocused = findFocus();
+        if (currentFocused == this)
+            currentFocused = null;
+
+        View nextFocused = FocusFinder.getInstance().findNextFocus(this,
+                currentFocused, direction);
+
         final int maxJump = horizontal ? getMaxScrollAmountHorizontal()
                 : getMaxScrollAmountVertical();
 
-        if (!horizontal) {
-//          if (nextFocused != null) {
-//              nextFocused.getDrawingRect(mTempRect);
-//              offsetDescendantRectToMyCoords(nextFocused, mTempRect);
-//              int scrollDelta = computeScrollDeltaToGetChildRectOnScreen(mTempRect);
-//              doScroll(0, scrollDelta);
-//              nextFocused.requestFocus(direction);
-//          } else {
-//              // no new focus
-                int scrollDelta = maxJump;
-                if (direction == View.FOCUS_UP && getScrollY() < scrollDelta) {
-                    scrollDelta = getScrollY();
-                } else if (direction == View.FOCUS_DOWN) {
-                    if (getChildCount() > 0) {
-                        int daBottom = getChildAt(0).getBottom();
-                        int screenBottom = getScrollY() + getHeight();
-                        if (daBottom - screenBottom < maxJump) {
-                            scrollDelta = daBottom - screenBottom;
-                        }
-                    }
-                }
-                if (scrollDelta == 0) {
-                    return false;
-                }
-                doScroll(0, direction == View.FOCUS_DOWN ? scrollDelta
-                        : -scrollDelta);
-//          }
+        if (nextFocused != null && isWithinDeltaOfScreen(nextFocused,
+                horizontal ? maxJump : 0, getWidth(), horizontal ? 0 : maxJump, getHeight())) {
+            nextFocused.getDrawingRect(mTempRect);
+            offsetDescendantRectToMyCoords(nextFocused, mTempRect);
+            final int scrollDelta = horizontal
+                    ? computeScrollXDeltaToGetChildRectOnScreen(mTempRect)
+                    : computeScrollYDeltaToGetChildRectOnScreen(mTempRect);
+            doScroll(horizontal ? scrollDelta : 0, horizontal ? 0 : scrollDelta);
+            mTwoDScrollViewMovedFocus = true;
+            nextFocused.requestFocus(direction);
+            mTwoDScrollViewMovedFocus = false;
         } else {
-//          if (nextFocused != null) {
-//              nextFocused.getDrawingRect(mTempRect);
-//              offsetDescendantRectToMyCoords(nextFocused, mTempRect);
-//              int scrollDelta = computeScrollDeltaToGetChildRectOnScreen(mTempRect);
-//              doScroll(scrollDelta, 0);
-//              nextFocused.requestFocus(direction);
-//          } else {
-                // no new focus
-                int scrollDelta = maxJump;
-                if (direction == View.FOCUS_UP && getScrollY() < scrollDelta) {
-                    scrollDelta = getScrollY();
-                } else if (direction == View.FOCUS_DOWN) {
-                    if (getChildCount() > 0) {
-                        int daBottom = getChildAt(0).getBottom();
-                        int screenBottom = getScrollY() + getHeight();
-                        if (daBottom - screenBottom < maxJump) {
-                            scrollDelta = daBottom - screenBottom;
-                        }
-                    }
-                }
-                if (scrollDelta == 0) {
-                    return false;
-                }
-                doScroll(direction == View.FOCUS_DOWN ? scrollDelta
-                        : -scrollDelta, 0);
-//          }
+            // no new focus
+            int scrollDelta = maxJump * getKeyRepeatJumpFactor(repeatCount);
+            final int scroll = horizontal ? getScrollX() : getScrollY();
+            if (backward) {
+                scrollDelta = Math.min(scrollDelta, scroll);
+            } else if (getChildCount() > 0) {
+                final int contentEnd = horizontal ? getContentRight() : getContentBottom();
+                final int screenEnd = scroll + (horizontal ? getWidth() : getHeight());
+                scrollDelta = Math.min(scrollDelta, contentEnd - screenEnd);
+            }
+            if (scrollDelta <= 0) {
+                return false;
+            }
+            if (backward) {
+                scrollDelta = -scrollDelta;
+            }
+            doScroll(horizontal ? scrollDelta : 0, horizontal ? 0 : scrollDelta);
+        }
+
+        if (currentFocused != null && currentFocused.isFocused()
+                && isOffScreen(currentFocused)) {
+            // previously focused item still has focus and is off screen, give
+            // it up (take it ourselves) so that it does not pull the scroll back
+            final int descendantFocusability = getDescendantFocusability();
+            setDescendantFocusability(ViewGroup.FOCUS_BEFORE_DESCENDANTS);
+            requestFocus();
+            setDescendantFocusability(descendantFocusability);
         }
         return true;
     }
 
+    /**
+     * @return how many times the normal jump to scroll by while an arrow key
+     *  has been repeating repeatCount times
+     */
+    private static int getKeyRepeatJumpFactor(int repeatCount) {
+        return 1 + Math.min(repeatCount / KEY_REPEAT_ACCELERATION_STEP, KEY_REPEAT_MAX_ACCELERATION - 1);
+    }
+
     /**
      * @return whether the descendant of this scroll view is scrolled off
      *  screen.
@@ -1421,12 +2563,13 @@ public class DualScrollView extends FrameLayout {
             // Nothing to do.
             return;
         }
+        abortQueuedScroll();
         long duration = AnimationUtils.currentAnimationTimeMillis() - mLastScroll;
         if (duration > ANIMATED_SCROLL_GAP) {
             final int height = getHeight() - getPaddingBottom() - getPaddingTop();
-            final int bottom = getChildAt(0).getHeight();
+            final int bottom = getContentHeight();
             final int width = getWidth() - getPaddingRight() - getPaddingLeft();
-            final int right = getChildAt(0).getWidth();
+            final int right = getContentWidth();
             final int maxX = Math.max(0, right - width);
             final int maxY = Math.max(0, bottom - height);
             final int scrollX = getScrollX();
@@ -1435,7 +2578,8 @@ public class DualScrollView extends FrameLayout {
             dy = Math.max(0, Math.min(scrollY + dy, maxY)) - scrollY;
 
             mScroller.startScroll(getScrollX(), scrollY, dx, dy);
-            postInvalidateOnAnimation();
+            setScrollState(SCROLL_STATE_SETTLING);
+            mFramePump.schedule();
         } else {
             if (!mScroller.isFinished()) {
                 mScroller.abortAnimation();
@@ -1459,6 +2603,342 @@ public class DualScrollView extends FrameLayout {
         smoothScrollBy(x - getScrollX(), y - getScrollY());
     }
 
+    /**
+     * Scrolls to a cell of grid content, computing its position from the
+     * size models instead of a materialized child, so the cell doesn't need
+     * to exist yet. An axis without a size model doesn't move. A smooth
+     * scroll to a far cell jumps close to it first, so only the content
+     * around the cell is ever laid out and drawn.
+     *
+     * @param row the row of the cell, ignored without a row model
+     * @param column the column of the cell, ignored without a column model
+     * @param alignment where to put the cell, for example {@link #CELL_ALIGN_START}
+     * @param smooth true to animate the scroll
+     * @return false if there is no size model or the cell doesn't exist
+     * @see #setSizeModels
+     */
+    public boolean scrollToCell(int row, int column, int alignment, boolean smooth) {
+        if (getChildCount() == 0 || !isCellInModels(row, column)) {
+            return false;
+        }
+        int x = getScrollX();
+        int y = getScrollY();
+        if (mColumnSizeModel != null) {
+            x = getCellScrollPosition(mColumnSizeModel, column, alignment,
+                    getWidth() - getPaddingLeft() - getPaddingRight(),
+                    getChildAt(0).getLeft() - getPaddingLeft());
+        }
+        if (mRowSizeModel != null) {
+            y = getCellScrollPosition(mRowSizeModel, row, alignment,
+                    getHeight() - getPaddingTop() - getPaddingBottom(),
+                    getChildAt(0).getTop() - getPaddingTop());
+        }
+        scrollToCellPosition(x, y, smooth);
+        return true;
+    }
+
+    /**
+     * Scrolls as little as possible to bring a cell of grid content entirely
+     * on screen, or its start if it is larger than the viewport. Like
+     * {@link #scrollToCell}, the cell doesn't need to exist yet.
+     *
+     * @return false if there is no size model or the cell doesn't exist
+     */
+    public boolean revealCell(int row, int column, boolean smooth) {
+        if (getChildCount() == 0 || !isCellInModels(row, column)) {
+            return false;
+        }
+        int x = getScrollX();
+        int y = getScrollY();
+        if (mColumnSizeModel != null) {
+            x = getRevealScrollPosition(mColumnSizeModel, column, x,
+                    getWidth() - getPaddingLeft() - getPaddingRight(),
+                    getChildAt(0).getLeft() - getPaddingLeft());
+        }
+        if (mRowSizeModel != null) {
+            y = getRevealScrollPosition(mRowSizeModel, row, y,
+                    getHeight() - getPaddingTop() - getPaddingBottom(),
+                    getChildAt(0).getTop() - getPaddingTop());
+        }
+        if (x != getScrollX() || y != getScrollY()) {
+            scrollToCellPosition(x, y, smooth);
+        }
+        return true;
+    }
+
+    private boolean isCellInModels(int row, int column) {
+        if (mColumnSizeModel == null && mRowSizeModel == null) {
+            return false;
+        }
+        return (mColumnSizeModel == null || (column >= 0 && column < mColumnSizeModel.getCount()))
+                && (mRowSizeModel == null || (row >= 0 && row < mRowSizeModel.getCount()));
+    }
+
+    /**
+     * Sets who rebinds the visible cells whose data changed, after one of
+     * the notifyRows or notifyColumns calls.
+     */
+    public void setGridCellBinder(GridCellBinder binder) {
+        mGridCellBinder = binder;
+    }
+
+    /**
+     * Tells that rows were inserted in the grid content. The row model is
+     * updated, the rows visible at the top of the viewport stay in place and
+     * only the inserted rows that are visible are rebound.
+     * <p>Keeping the visible rows in place needs a row model, see
+     * {@link #setSizeModels}. Without one, the content is laid out again and
+     * the inserted rows are rebound, whatever the columns.</p>
+     *
+     * @param position the index of the first inserted row
+     * @param count the number of rows
+     * @param rowSize the height of each of them
+     */
+    public void notifyRowsInserted(int position, int count, int rowSize) {
+        applyGridChange(true, GRID_CHANGE_INSERT, position, 0, count, rowSize);
+    }
+
+    /**
+     * Tells that rows were removed from the grid content, keeping the rows
+     * visible at the top of the viewport in place when there is a row model.
+     */
+    public void notifyRowsRemoved(int position, int count) {
+        applyGridChange(true, GRID_CHANGE_REMOVE, position, 0, count, 0);
+    }
+
+    /**
+     * Tells that a range of rows moved, keeping the rows visible at the top
+     * of the viewport in place when there is a row model. The moved rows
+     * are rebound at their new position.
+     *
+     * @param from the index of the first moved row before the move
+     * @param to the index of the first moved row after the move
+     * @param count the number of rows
+     */
+    public void notifyRowsMoved(int from, int to, int count) {
+        applyGridChange(true, GRID_CHANGE_MOVE, from, to, count, 0);
+    }
+
+    /**
+     * Tells that the data of rows changed, the visible ones are rebound.
+     */
+    public void notifyRowsChanged(int position, int count) {
+        rebindVisibleCells(true, position, count);
+    }
+
+    /**
+     * Like {@link #notifyRowsInserted}, for columns.
+     */
+    public void notifyColumnsInserted(int position, int count, int columnSize) {
+        applyGridChange(false, GRID_CHANGE_INSERT, position, 0, count, columnSize);
+    }
+
+    /**
+     * Like {@link #notifyRowsRemoved}, for columns.
+     */
+    public void notifyColumnsRemoved(int position, int count) {
+        applyGridChange(false, GRID_CHANGE_REMOVE, position, 0, count, 0);
+    }
+
+    /**
+     * Like {@link #notifyRowsMoved}, for columns.
+     */
+    public void notifyColumnsMoved(int from, int to, int count) {
+        applyGridChange(false, GRID_CHANGE_MOVE, from, to, count, 0);
+    }
+
+    /**
+     * Like {@link #notifyRowsChanged}, for columns.
+     */
+    public void notifyColumnsChanged(int position, int count) {
+        rebindVisibleCells(false, position, count);
+    }
+
+    /**
+     * Updates the size model of an axis and scrolls so the first visible row
+     * or column stays where it was on screen. A running scroll animation is
+     * stopped, since it targets positions of the old content. Without a model
+     * the position can't be kept, the content is only laid out and rebound.
+     */
+    private void applyGridChange(boolean rows, int change, int position, int to, int count,
+            int size) {
+        if (count <= 0) {
+            return;
+        }
+        final AxisSizeModel model = rows ? mRowSizeModel : mColumnSizeModel;
+        if (model == null) {
+            requestLayout();
+            invalidateViewport();
+            if (change == GRID_CHANGE_INSERT) {
+                rebindVisibleCells(rows, position, count);
+            } else if (change == GRID_CHANGE_MOVE) {
+                rebindVisibleCells(rows, to, count);
+            }
+            return;
+        }
+        final View child = getChildAt(0);
+        final int origin = child == null ? 0
+                : rows ? child.getTop() - getPaddingTop() : child.getLeft() - getPaddingLeft();
+        final int scroll = (rows ? getScrollY() : getScrollX()) - origin;
+        int anchor = model.getIndexAt(scroll);
+        int anchorDelta = anchor >= 0 ? scroll - model.getOffset(anchor) : 0;
+        switch (change) {
+            case GRID_CHANGE_INSERT:
+                model.insert(position, count, size);
+                if (anchor >= position) {
+                    anchor += count;
+                }
+                break;
+            case GRID_CHANGE_REMOVE:
+                model.remove(position, count);
+                if (anchor >= position + count) {
+                    anchor -= count;
+                } else if (anchor >= position) {
+                    // the anchor is gone, show what follows it from its start
+                    anchor = position;
+                    anchorDelta = 0;
+                }
+                break;
+            case GRID_CHANGE_MOVE:
+                model.move(position, to, count);
+                if (anchor >= position && anchor < position + count) {
+                    anchor = to + anchor - position;
+                } else {
+                    if (anchor >= position + count) {
+                        anchor -= count;
+                    }
+                    if (anchor >= to) {
+                        anchor += count;
+                    }
+                }
+                break;
+        }
+        if (!mScroller.isFinished()) {
+            mScroller.abortAnimation();
+        }
+        abortQueuedScroll();
+        if (anchor >= 0) {
+            final int newScroll = origin + model.getOffset(Math.min(anchor, model.getCount()))
+                    + anchorDelta;
+            if (rows) {
+                scrollTo(getScrollX(), newScroll);
+            } else {
+                scrollTo(newScroll, getScrollY());
+            }
+        }
+        requestLayout();
+        invalidateViewport();
+        if (change == GRID_CHANGE_INSERT) {
+            rebindVisibleCells(rows, position, count);
+        } else if (change == GRID_CHANGE_MOVE) {
+            rebindVisibleCells(rows, to, count);
+        }
+    }
+
+    /**
+     * Asks the binder to rebind the visible cells of a range of rows or
+     * columns, all the visible cells of the other axis included.
+     */
+    private void rebindVisibleCells(boolean rows, int position, int count) {
+        final GridCellBinder binder = mGridCellBinder;
+        final Rect viewport = mTempRect;
+        if (binder == null || count <= 0 || !getViewport(viewport)) {
+            return;
+        }
+        int first = position;
+        int last = position + count - 1;
+        final AxisSizeModel model = rows ? mRowSizeModel : mColumnSizeModel;
+        if (model != null) {
+            first = Math.max(first, model.getIndexAt(rows ? viewport.top : viewport.left));
+            last = Math.min(last, model.getIndexAt((rows ? viewport.bottom : viewport.right) - 1));
+            if (first > last) {
+                return;
+            }
+        }
+        final AxisSizeModel otherModel = rows ? mColumnSizeModel : mRowSizeModel;
+        int otherFirst = 0;
+        int otherCount = -1;
+        if (otherModel != null && otherModel.getCount() > 0) {
+            otherFirst = otherModel.getIndexAt(rows ? viewport.left : viewport.top);
+            otherCount = otherModel.getIndexAt((rows ? viewport.right : viewport.bottom) - 1)
+                    - otherFirst + 1;
+        }
+        if (rows) {
+            binder.onRebindCells(this, first, last - first + 1, otherFirst, otherCount);
+        } else {
+            binder.onRebindCells(this, otherFirst, otherCount, first, last - first + 1);
+        }
+    }
+
+    /**
+     * @param origin the scroll position showing the start of the content
+     * @return the scroll position aligning the given index in the viewport
+     */
+    private static int getCellScrollPosition(AxisSizeModel model, int index, int alignment,
+            int viewport, int origin) {
+        final int start = model.getOffset(index);
+        final int size = model.getSize(index);
+        int position;
+        switch (alignment) {
+            case CELL_ALIGN_CENTER:
+                position = start + (size - viewport) / 2;
+                break;
+            case CELL_ALIGN_END:
+                position = start + size - viewport;
+                break;
+            default:
+                position = start;
+                break;
+        }
+        return origin + Math.max(0, Math.min(position, model.getTotalSize() - viewport));
+    }
+
+    private static int getRevealScrollPosition(AxisSizeModel model, int index, int scroll,
+            int viewport, int origin) {
+        final int start = model.getOffset(index);
+        final int end = start + model.getSize(index);
+        int position = scroll - origin;
+        if (start < position || end - start > viewport) {
+            position = start;
+        } else if (end > position + viewport) {
+            position = end - viewport;
+        }
+        return origin + Math.max(0, Math.min(position, model.getTotalSize() - viewport));
+    }
+
+    private void scrollToCellPosition(int x, int y, boolean smooth) {
+        if (!smooth) {
+            abortQueuedScroll();
+            if (!mScroller.isFinished()) {
+                mScroller.abortAnimation();
+            }
+            scrollTo(x, y);
+            return;
+        }
+        // land a viewport away from far cells, the content in between is
+        // never laid out nor drawn
+        final int viewportWidth = getWidth() - getPaddingLeft() - getPaddingRight();
+        final int viewportHeight = getHeight() - getPaddingTop() - getPaddingBottom();
+        int startX = getScrollX();
+        int startY = getScrollY();
+        if (Math.abs(x - startX) > CELL_JUMP_VIEWPORTS * viewportWidth) {
+            startX = x - (x > startX ? viewportWidth : -viewportWidth);
+        }
+        if (Math.abs(y - startY) > CELL_JUMP_VIEWPORTS * viewportHeight) {
+            startY = y - (y > startY ? viewportHeight : -viewportHeight);
+        }
+        if (startX != getScrollX() || startY != getScrollY()) {
+            if (!mScroller.isFinished()) {
+                mScroller.abortAnimation();
+            }
+            scrollTo(startX, startY);
+        }
+        // always animate, even right after another smooth scroll, which
+        // smoothScrollBy would otherwise turn into a jump
+        mLastScroll = 0;
+        smoothScrollTo(x, y);
+    }
+
     /**
      * <p>The scroll range of a scroll view is the overall height of all of its
      * children.</p>
@@ -1471,7 +2951,7 @@ public class DualScrollView extends FrameLayout {
             return contentWidth;
         }
 
-        int scrollRange = getChildAt(0).getRight();
+        int scrollRange = getContentRight();
         final int scrollX = getScrollX();
         final int overscrollRight = Math.max(0, scrollRange - contentWidth);
         if (scrollX < 0) {
@@ -1491,7 +2971,7 @@ public class DualScrollView extends FrameLayout {
             return contentHeight;
         }
 
-        int scrollRange = getChildAt(0).getBottom();
+        int scrollRange = getContentBottom();
         final int scrollY = getScrollY();
         final int overscrollBottom = Math.max(0, scrollRange - contentHeight);
         if (scrollY < 0) {
@@ -1544,523 +3024,3027 @@ public class DualScrollView extends FrameLayout {
     
     @Override
 	public void computeScroll() {
+		// Scroll animations are advanced by the frame pump, out of the draw
+		// pass. Only make sure it runs if the scroller was started without it.
+		if (!mScroller.isFinished()) {
+			mFramePump.schedule();
+		}
+	}
+
+	/**
+	 * Advances the scroller by one frame. Called from the frame pump, before
+	 * the traversal of the frame, so the new position is drawn in that frame.
+	 * Nothing is invalidated unless the position actually changed.
+	 *
+	 * @return true if the animation needs another frame
+	 */
+	private boolean advanceScrollAnimation() {
 		if (mScroller.computeScrollOffset()) {
-			// This is called at drawing time by ViewGroup. We don't want to
-			// re-show the scrollbars at this point, which scrollTo will do,
-			// so we replicate most of scrollTo here.
-			//
-			// It's a little odd to call onScrollChanged from inside the
-			// drawing.
-			//
-			// It is, except when you remember that computeScroll() is used to
-			// animate scrolling. So unless we want to defer the
-			// onScrollChanged()
-			// until the end of the animated scrolling, we don't really have a
-			// choice here.
-			//
-			// I agree. The alternative, which I think would be worse, is to
-			// post
-			// something and tell the subclasses later. This is bad because
-			// there
-			// will be a window where mScrollX/Y is different from what the app
-			// thinks it is.
-			//
 			int oldX = getScrollX();
 			int oldY = getScrollY();
-			int x = mScroller.getCurrX();
-			int y = mScroller.getCurrY();
+			// an axis handed over to the elastic spring is moved by it
+			int x = mElasticSpringX.running ? oldX : mScroller.getCurrX();
+			int y = mElasticSpringY.running ? oldY : mScroller.getCurrY();
 			if (oldX != x || oldY != y) { 
 				final int rangeX = getScrollRangeX();
                 final int rangeY = getScrollRangeY();
-				final int overscrollMode = getOverScrollMode();
-				final boolean forceOverscroll = overscrollMode == OVER_SCROLL_ALWAYS;
-                final boolean canOverscroll = ICE_CREAM_OR_GREATER && (forceOverscroll || overscrollMode == OVER_SCROLL_IF_CONTENT_SCROLLS);
                 overScrollBy(x - oldX, y - oldY, oldX, oldY, rangeX, rangeY,
-                		mOverflingDistance, mOverflingDistance, false);
-				onScrollChanged(getScrollX(), getScrollY(), oldX, oldY);
-				if (canOverscroll) {
-					if (rangeX > 0 || forceOverscroll) {
+                		mOverflingDistanceX, mOverflingDistanceY, false);
+                if (mOverScrollStyle == OVER_SCROLL_STYLE_ELASTIC) {
+                    // the fling stops at the edges, let the spring carry its
+                    // velocity past them and back
+                    final float velocity = mScroller.getCurrVelocity()
+                            / (float) Math.hypot(x - oldX, y - oldY);
+                    if (isOverScrollEnabledX() && ((x <= 0 && oldX > 0) || (x >= rangeX && oldX < rangeX))) {
+                        mElasticSpringX.start(getScrollX(), 0, rangeX, velocity * (x - oldX));
+                        mElasticLastTime = AnimationUtils.currentAnimationTimeMillis();
+                    }
+                    if (isOverScrollEnabledY() && ((y <= 0 && oldY > 0) || (y >= rangeY && oldY < rangeY))) {
+                        mElasticSpringY.start(getScrollY(), 0, rangeY, velocity * (y - oldY));
+                        mElasticLastTime = AnimationUtils.currentAnimationTimeMillis();
+                    }
+                }
+				boolean absorbed = false;
+				if (mEdgeGlowLeft != null && isOverScrollEnabledX()) {
 	                    if (x < 0 && oldX >= 0) {
 	                        mEdgeGlowLeft.onAbsorb((int) mScroller.getCurrVelocity());
+	                        absorbed = true;
 	                    } else if (x > rangeX && oldX <= rangeX) {
 	                        mEdgeGlowRight.onAbsorb((int) mScroller.getCurrVelocity());
+	                        absorbed = true;
 	                    }
-					}
-
-					if (rangeY > 0 || forceOverscroll) {
+				}
+				if (mEdgeGlowTop != null && isOverScrollEnabledY()) {
 	                    if (y < 0 && oldY >= 0) {
 	                        mEdgeGlowTop.onAbsorb((int) mScroller.getCurrVelocity());
+	                        absorbed = true;
 	                    } else if (y > rangeY && oldY <= rangeY) {
 	                        mEdgeGlowBottom.onAbsorb((int) mScroller.getCurrVelocity());
+	                        absorbed = true;
 	                    }
-					}
+				}
+				if (absorbed) {
+					postInvalidateOnAnimation();
 				}
 			}
-			// Keep on drawing until the animation has finished.
-			postInvalidate();
 		}
+		if (mScroller.isFinished()) {
+			if (!mIsBeingDragged && !isElasticSpringRunning()) {
+				demoteChildLayer();
+			}
+			return false;
+		}
+		return true;
 	}
 
     /**
-     * Scrolls the view to the given child.
-     *
-     * @param child the View to scroll to
+     * Shows an overview of the content in the top right corner, with the
+     * viewport outlined. Touching or dragging on it jumps the content there,
+     * like a fast scroll thumb. The overview is a downscaled thumbnail built
+     * progressively, a few tiles at a time while the main thread is idle, and
+     * only the tiles where the content invalidated are rendered again. When
+     * culling is enabled, tiles are rendered once their part of the content
+     * is not culled anymore.
      */
-    private void scrollToChild(View child) {
-        child.getDrawingRect(mTempRect);
+    public void setMinimapEnabled(boolean enabled) {
+        if (enabled == (mMinimap != null)) {
+            return;
+        }
+        if (enabled) {
+            mMinimap = new Minimap();
+            mMinimap.onContentLayout();
+        } else {
+            if (mFastScrollTarget == FAST_SCROLL_MINIMAP) {
+                endScrub();
+            }
+            mMinimap.release();
+            mMinimap = null;
+        }
+        invalidate();
+    }
 
-        /* Offset from child's local coordinates to ScrollView coordinates */
-        offsetDescendantRectToMyCoords(child, mTempRect);
+    public boolean isMinimapEnabled() {
+        return mMinimap != null;
+    }
 
-        int scrollXDelta = computeScrollXDeltaToGetChildRectOnScreen(mTempRect);
-        int scrollYDelta = computeScrollYDeltaToGetChildRectOnScreen(mTempRect);
+    /**
+     * Sets the largest size of the minimap, in pixels. The content is scaled
+     * down to fit in it, keeping its aspect ratio.
+     */
+    public void setMinimapMaxSize(int maxWidth, int maxHeight) {
+        if (mMinimap != null) {
+            mMinimap.mMaxWidth = Math.max(1, maxWidth);
+            mMinimap.mMaxHeight = Math.max(1, maxHeight);
+            mMinimap.onContentLayout();
+            invalidate();
+        }
+    }
 
-        if (scrollXDelta != 0 || scrollYDelta != 0 ) {
-            scrollBy(scrollXDelta, scrollYDelta);
+    @Override
+    public ViewParent invalidateChildInParent(int[] location, Rect dirty) {
+        // dirty is still in the coordinates of our child at this point
+        if (mMinimap != null) {
+            mMinimap.invalidateContent(dirty.left, dirty.top, dirty.right, dirty.bottom);
+        }
+        return super.invalidateChildInParent(location, dirty);
+    }
+
+    @Override
+    public void onDescendantInvalidated(View child, View target) {
+        super.onDescendantInvalidated(child, target);
+        if (mMinimap != null) {
+            // hardware accelerated invalidations no longer carry a dirty rect
+            final Rect rect = mMinimap.mInvalidRect;
+            rect.set(0, 0, target.getWidth(), target.getHeight());
+            if (target != this) {
+                offsetDescendantRectToMyCoords(target, rect);
+            }
+            rect.offset(-child.getLeft(), -child.getTop());
+            mMinimap.invalidateContent(rect.left, rect.top, rect.right, rect.bottom);
         }
     }
 
     /**
-     * If rect is off screen, scroll just enough to get it (or at least the
-     * first screen size chunk of it) on screen.
-     *
-     * @param rect      The rectangle.
-     * @param immediate True to scroll immediately without animation
-     * @return true if scrolling was performed
+     * Shows draggable thumbs along the right and bottom edges, for the axes
+     * that can scroll. Dragging a thumb jumps the content straight to the
+     * matching position, at most once per frame, without animating through
+     * the content in between. Only the thumbs take touches, the rest of the
+     * edges still reaches the content. The scroll state is
+     * {@link #SCROLL_STATE_SCRUBBING} while the thumb moves and goes
+     * {@link #SCROLL_STATE_IDLE} as soon as the finger rests, so expensive
+     * content can be bound only once scrubbing pauses.
      */
-    private boolean scrollToChildRect(Rect rect, boolean immediate) {
-        final int deltaX = computeScrollXDeltaToGetChildRectOnScreen(rect);
-        final int deltaY = computeScrollYDeltaToGetChildRectOnScreen(rect);
-        final boolean scroll = (deltaX != 0 || deltaY != 0);
-        if (scroll) {
-            if (immediate) {
-                scrollBy(deltaX, deltaY);
-            } else {
-                smoothScrollBy(deltaX, deltaY);
-            }
+    public void setFastScrollEnabled(boolean enabled) {
+        if (enabled == mFastScrollEnabled) {
+            return;
         }
-        return scroll;
+        mFastScrollEnabled = enabled;
+        if (!enabled) {
+            endScrub();
+        }
+        invalidate();
+    }
+
+    public boolean isFastScrollEnabled() {
+        return mFastScrollEnabled;
     }
 
     /**
-     * Compute the amount to scroll in the Y direction in order to get
-     * a rectangle completely on the screen (or, if taller than the screen,
-     * at least the first screen size chunk of it).
-     *
-     * @param rect The rect.
-     * @return The scroll delta.
+     * Also shows a puck moving over the viewport when both axes can scroll,
+     * which scrubs through both axes at once.
      */
-    protected int computeScrollYDeltaToGetChildRectOnScreen(Rect rect) {
-        if (getChildCount() == 0) return 0;
+    public void setFastScrollPuckEnabled(boolean enabled) {
+        mFastScrollPuckEnabled = enabled;
+        invalidate();
+    }
 
-        int height = getHeight();
-        int screenTop = getScrollY();
-        int screenBottom = screenTop + height;
+    public boolean isFastScrollPuckEnabled() {
+        return mFastScrollPuckEnabled;
+    }
 
-        int fadingEdge = getVerticalFadingEdgeLength();
+    public void setFastScrollColor(int color) {
+        mFastScrollPaint.setColor(color);
+        invalidate();
+    }
 
-        // leave room for top fading edge as long as rect isn't at very top
-        if (rect.top > 0) {
-            screenTop += fadingEdge;
-        }
+    private int getFastScrollTrackWidth() {
+        return getWidth() - (getScrollRangeY() > 0 ? mFastScrollThickness : 0);
+    }
 
-        // leave room for bottom fading edge as long as rect isn't at very bottom
-        if (rect.bottom < getChildAt(0).getHeight()) {
-            screenBottom -= fadingEdge;
-        }
+    private int getFastScrollTrackHeight() {
+        return getHeight() - (getScrollRangeX() > 0 ? mFastScrollThickness : 0);
+    }
 
-        int scrollYDelta = 0;
+    private int getFastScrollThumbLength(int track, int extent, int range) {
+        final int length = (int) ((long) track * extent / Math.max(1, range));
+        return Math.min(track, Math.max(mFastScrollMinLength, length));
+    }
 
-        if (rect.bottom > screenBottom && rect.top > screenTop) {
-            // need to move down to get it in view: move down just enough so
-            // that the entire rectangle is in view (or at least the first
-            // screen size chunk).
+    private static float clampFraction(float fraction) {
+        return Math.max(0f, Math.min(1f, fraction));
+    }
 
-            if (rect.height() > height) {
-                // just enough to get screen size chunk on
-                scrollYDelta += (rect.top - screenTop);
-            } else {
-                // get entire rect at bottom of screen
-                scrollYDelta += (rect.bottom - screenBottom);
+    /**
+     * Computes where a thumb is, in the coordinates of this view (not of the
+     * content).
+     *
+     * @param which {@link #FAST_SCROLL_HORIZONTAL}, {@link #FAST_SCROLL_VERTICAL}
+     *        or {@link #FAST_SCROLL_PUCK}
+     * @param out the rect receiving the bounds of the thumb
+     * @return false if the thumb is not shown
+     */
+    private boolean getFastScrollThumbRect(int which, RectF out) {
+        final int rangeX = getScrollRangeX();
+        final int rangeY = getScrollRangeY();
+        final int trackWidth = getFastScrollTrackWidth();
+        final int trackHeight = getFastScrollTrackHeight();
+        final float fractionX = rangeX > 0 ? clampFraction((float) getScrollX() / rangeX) : 0;
+        final float fractionY = rangeY > 0 ? clampFraction((float) getScrollY() / rangeY) : 0;
+        switch (which) {
+            case FAST_SCROLL_HORIZONTAL: {
+                if (rangeX <= 0) {
+                    return false;
+                }
+                final int length = getFastScrollThumbLength(trackWidth,
+                        computeHorizontalScrollExtent(), computeHorizontalScrollRange());
+                final float left = fractionX * (trackWidth - length);
+                out.set(left, getHeight() - mFastScrollThickness, left + length, getHeight());
+                return true;
             }
-
-            // make sure we aren't scrolling beyond the end of our content
-            int bottom = getChildAt(0).getBottom();
-            int distanceToBottom = bottom - screenBottom;
-            scrollYDelta = Math.min(scrollYDelta, distanceToBottom);
-
-        } else if (rect.top < screenTop && rect.bottom < screenBottom) {
-            // need to move up to get it in view: move up just enough so that
-            // entire rectangle is in view (or at least the first screen
-            // size chunk of it).
-
-            if (rect.height() > height) {
-                // screen size chunk
-                scrollYDelta -= (screenBottom - rect.bottom);
-            } else {
-                // entire rect at top
-                scrollYDelta -= (screenTop - rect.top);
+            case FAST_SCROLL_VERTICAL: {
+                if (rangeY <= 0) {
+                    return false;
+                }
+                final int length = getFastScrollThumbLength(trackHeight,
+                        computeVerticalScrollExtent(), computeVerticalScrollRange());
+                final float top = fractionY * (trackHeight - length);
+                out.set(getWidth() - mFastScrollThickness, top, getWidth(), top + length);
+                return true;
+            }
+            case FAST_SCROLL_PUCK: {
+                if (!mFastScrollPuckEnabled || rangeX <= 0 || rangeY <= 0) {
+                    return false;
+                }
+                final int size = mFastScrollPuckSize;
+                final float left = fractionX * (trackWidth - size);
+                final float top = fractionY * (trackHeight - size);
+                out.set(left, top, left + size, top + size);
+                return true;
             }
-
-            // make sure we aren't scrolling any further than the top our content
-            scrollYDelta = Math.max(scrollYDelta, -getScrollY());
         }
-        return scrollYDelta;
+        return false;
     }
 
-    protected int computeScrollXDeltaToGetChildRectOnScreen(Rect rect) {
-        if (getChildCount() == 0) return 0;
-
-        int width = getWidth();
-        int screenLeft = getScrollX();
-        int screenRight = screenLeft + width;
-
-        int fadingEdge = getHorizontalFadingEdgeLength();
-
-        // leave room for top fading edge as long as rect isn't at very top
-        if (rect.left > 0) {
-            screenLeft += fadingEdge;
+    /**
+     * @return the thumb under the given point of this view, or
+     *         {@link #FAST_SCROLL_NONE}
+     */
+    private int findFastScrollTarget(float x, float y) {
+        if (getChildCount() == 0) {
+            return FAST_SCROLL_NONE;
         }
-
-        // leave room for bottom fading edge as long as rect isn't at very bottom
-        if (rect.right < getChildAt(0).getWidth()) {
-            screenRight -= fadingEdge;
+        final RectF rect = mFastScrollRect;
+        if (mMinimap != null && mMinimap.getBounds(rect) && rect.contains(x, y)) {
+            return FAST_SCROLL_MINIMAP;
         }
+        if (!mFastScrollEnabled) {
+            return FAST_SCROLL_NONE;
+        }
+        if (getFastScrollThumbRect(FAST_SCROLL_PUCK, rect) && rect.contains(x, y)) {
+            return FAST_SCROLL_PUCK;
+        }
+        // the thumbs are thin, they are touchable across the touch width but
+        // only along their length, the rest of the edges belongs to the cells
+        if (getFastScrollThumbRect(FAST_SCROLL_VERTICAL, rect)
+                && x >= getWidth() - mFastScrollTouchWidth && y >= rect.top && y < rect.bottom) {
+            return FAST_SCROLL_VERTICAL;
+        }
+        if (getFastScrollThumbRect(FAST_SCROLL_HORIZONTAL, rect)
+                && y >= getHeight() - mFastScrollTouchWidth && x >= rect.left && x < rect.right) {
+            return FAST_SCROLL_HORIZONTAL;
+        }
+        return FAST_SCROLL_NONE;
+    }
 
-        int scrollXDelta = 0;
-
-        if (rect.right > screenRight && rect.right > screenLeft) {
-            // need to move down to get it in view: move down just enough so
-            // that the entire rectangle is in view (or at least the first
-            // screen size chunk).
-
-            if (rect.width() > width) {
-                // just enough to get screen size chunk on
-                scrollXDelta += (rect.left - screenLeft);
-            } else {
-                // get entire rect at bottom of screen
-                scrollXDelta += (rect.right - screenRight);
-            }
-
-            // make sure we aren't scrolling beyond the end of our content
-            int right = getChildAt(0).getRight();
-            int distanceToRight = right - screenRight;
-            scrollXDelta = Math.min(scrollXDelta, distanceToRight);
-
-        } else if (rect.left < screenLeft && rect.right < screenRight) {
-            // need to move up to get it in view: move up just enough so that
-            // entire rectangle is in view (or at least the first screen
-            // size chunk of it).
-
-            if (rect.width() > width) {
-                // screen size chunk
-                scrollXDelta -= (screenRight - rect.right);
-            } else {
-                // entire rect at top
-                scrollXDelta -= (screenLeft - rect.left);
+    /**
+     * @return true if the event was consumed by a fast scroll thumb
+     */
+    private boolean onFastScrollTouchEvent(MotionEvent ev) {
+        switch (ev.getAction() & MotionEvent.ACTION_MASK) {
+            case MotionEvent.ACTION_DOWN: {
+                final int target = findFastScrollTarget(ev.getX(), ev.getY());
+                if (target == FAST_SCROLL_NONE) {
+                    return false;
+                }
+                startScrub(target, ev.getX(), ev.getY());
+                return true;
             }
+            case MotionEvent.ACTION_MOVE:
+                if (mFastScrollTarget == FAST_SCROLL_NONE) {
+                    return false;
+                }
+                scrubTo(ev.getX(), ev.getY());
+                return true;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                if (mFastScrollTarget == FAST_SCROLL_NONE) {
+                    return false;
+                }
+                endScrub();
+                return true;
+        }
+        return mFastScrollTarget != FAST_SCROLL_NONE;
+    }
 
-            // make sure we aren't scrolling any further than the top our content
-            scrollXDelta = Math.max(scrollXDelta, -getScrollX());
+    private void startScrub(int target, float x, float y) {
+        abortQueuedScroll();
+        stopElasticSpring();
+        if (!mScroller.isFinished()) {
+            mScroller.abortAnimation();
         }
-        return scrollXDelta;
+        mKeyScrollDirection = 0;
+        final ViewParent parent = getParent();
+        if (parent != null) {
+            parent.requestDisallowInterceptTouchEvent(true);
+        }
+        mFastScrollTarget = target;
+        // keep the grabbed point of the thumb under the finger, a touch beside
+        // the thin thumb centers it on the other axis
+        final RectF rect = mFastScrollRect;
+        getFastScrollThumbRect(target, rect);
+        mFastScrollTouchOffsetX = x >= rect.left && x <= rect.right ? x - rect.left : rect.width() / 2;
+        mFastScrollTouchOffsetY = y >= rect.top && y <= rect.bottom ? y - rect.top : rect.height() / 2;
+        mScrubPaused = false;
+        setScrollState(SCROLL_STATE_SCRUBBING);
+        scrubTo(x, y);
     }
 
-    @Override
-    public void requestChildFocus(View child, View focused) {
-        if (!mTwoDScrollViewMovedFocus) {
-        if (!mIsLayoutDirty) {
-            scrollToChild(focused);
+    /**
+     * Records the position matching the thumb under the finger. The content
+     * jumps there on the next frame, whatever the number of moves until then.
+     */
+    private void scrubTo(float x, float y) {
+        final int target = mFastScrollTarget;
+        final RectF rect = mFastScrollRect;
+        int scrollX = getScrollX();
+        int scrollY = getScrollY();
+        if (target == FAST_SCROLL_MINIMAP) {
+            // center the viewport on the touched point of the content
+            if (mMinimap.getBounds(rect)) {
+                final View child = getChildAt(0);
+                scrollX = Math.round((x - rect.left) / mMinimap.mScale) + child.getLeft()
+                        - getPaddingLeft() - (getWidth() - getPaddingLeft() - getPaddingRight()) / 2;
+                scrollY = Math.round((y - rect.top) / mMinimap.mScale) + child.getTop()
+                        - getPaddingTop() - (getHeight() - getPaddingTop() - getPaddingBottom()) / 2;
+            }
         } else {
-            // The child may not be laid out yet, we can't compute the scroll yet
-            mChildToScrollTo = focused;
+            getFastScrollThumbRect(target, rect);
         }
-    }
-        super.requestChildFocus(child, focused);
+        if (target != FAST_SCROLL_VERTICAL && target != FAST_SCROLL_MINIMAP) {
+            final float travel = getFastScrollTrackWidth() - rect.width();
+            if (travel > 0) {
+                scrollX = Math.round(clampFraction((x - mFastScrollTouchOffsetX) / travel)
+                        * getScrollRangeX());
+            }
+        }
+        if (target != FAST_SCROLL_HORIZONTAL && target != FAST_SCROLL_MINIMAP) {
+            final float travel = getFastScrollTrackHeight() - rect.height();
+            if (travel > 0) {
+                scrollY = Math.round(clampFraction((y - mFastScrollTouchOffsetY) / travel)
+                        * getScrollRangeY());
+            }
+        }
+        mScrubTargetX = scrollX;
+        mScrubTargetY = scrollY;
+        mScrubPending = true;
+        mScrubLastMoveTime = AnimationUtils.currentAnimationTimeMillis();
+        if (mScrubPaused) {
+            mScrubPaused = false;
+            setScrollState(SCROLL_STATE_SCRUBBING);
+        }
+        mFramePump.schedule();
     }
 
+    private void endScrub() {
+        if (mFastScrollTarget == FAST_SCROLL_NONE) {
+            return;
+        }
+        if (mScrubPending) {
+            mScrubPending = false;
+            scrollTo(mScrubTargetX, mScrubTargetY);
+        }
+        mFastScrollTarget = FAST_SCROLL_NONE;
+        updateIdleState();
+    }
 
     /**
-     * When looking for focus in children of a scroll view, need to be a little
-     * more careful not to give focus to something that is scrolled off screen.
+     * Applies the scrubbed position and detects pauses. Called from the
+     * frame pump.
      *
-     * This is more expensive than the default {@link android.view.ViewGroup}
-     * implementation, otherwise this behavior might have been made the default.
+     * @return true if scrubbing needs another frame
      */
-    @Override
-    protected boolean onRequestFocusInDescendants(int direction,
-            Rect previouslyFocusedRect) {
-
-        // convert from forward / backward notation to up / down / left / right
-        // (ugh).
-        if (direction == View.FOCUS_FORWARD) {
-            direction = View.FOCUS_DOWN;
-        } else if (direction == View.FOCUS_BACKWARD) {
-            direction = View.FOCUS_UP;
+    private boolean advanceScrub() {
+        if (mFastScrollTarget == FAST_SCROLL_NONE) {
+            return false;
         }
-
-        final View nextFocus = previouslyFocusedRect == null ?
-                FocusFinder.getInstance().findNextFocus(this, null, direction) :
-                FocusFinder.getInstance().findNextFocusFromRect(this,
-                        previouslyFocusedRect, direction);
-
-        if (nextFocus == null) {
+        if (mScrubPending) {
+            mScrubPending = false;
+            scrollTo(mScrubTargetX, mScrubTargetY);
+        }
+        if (mScrubPaused) {
             return false;
         }
-
-        if (isOffScreen(nextFocus)) {
+        if (AnimationUtils.currentAnimationTimeMillis() - mScrubLastMoveTime >= SCRUB_PAUSE_DELAY) {
+            mScrubPaused = true;
+            setScrollState(SCROLL_STATE_IDLE);
             return false;
         }
-
-        return nextFocus.requestFocus(direction, previouslyFocusedRect);
+        return true;
     }
 
-    @Override
-    public boolean requestChildRectangleOnScreen(View child, Rect rectangle,
-            boolean immediate) {
-        // offset into coordinate space of this scroll view
-        rectangle.offset(child.getLeft() - child.getScrollX(),
-                child.getTop() - child.getScrollY());
-
-        return scrollToChildRect(rectangle, immediate);
+    /**
+     * Sets how over-scrolling looks, {@link #OVER_SCROLL_STYLE_GLOW} (the
+     * default) or {@link #OVER_SCROLL_STYLE_ELASTIC}. The elastic style lets
+     * the content follow the finger past its edges with an increasing
+     * resistance, up to half the viewport, and springs it back on release.
+     * Flings hitting an edge carry on past it and spring back too. No edge
+     * effect is allocated or drawn with the elastic style.
+     * <p>The over-scroll modes still decide which axes can over-scroll.</p>
+     */
+    public void setOverScrollStyle(int style) {
+        if (style == mOverScrollStyle) {
+            return;
+        }
+        mOverScrollStyle = style;
+        if (style != OVER_SCROLL_STYLE_ELASTIC) {
+            stopElasticSpring();
+        }
+        // allocates or drops the edge effects for the new style
+        setOverScrollMode(mOverScrollModeX, mOverScrollModeY);
+        invalidate();
     }
 
-    @Override
-    public void requestLayout() {
-        mIsLayoutDirty = true;
-        super.requestLayout();
+    public int getOverScrollStyle() {
+        return mOverScrollStyle;
     }
 
-    @Override
-    protected void onDetachedFromWindow() {
-        super.onDetachedFromWindow();
-//
-//        if (mScrollStrictSpan != null) {
-//            mScrollStrictSpan.finish();
-//            mScrollStrictSpan = null;
-//        }
-//        if (mFlingStrictSpan != null) {
-//            mFlingStrictSpan.finish();
-//            mFlingStrictSpan = null;
-//        }
+    /**
+     * Sets the stiffness of the elastic over-scroll spring, in 1/s^2.
+     * Higher values bring the content back faster and limit how far flings
+     * carry past the edges. Defaults to {@link #DEFAULT_ELASTIC_STIFFNESS}.
+     */
+    public void setElasticStiffness(float stiffness) {
+        mElasticStiffness = stiffness > 0 ? stiffness : DEFAULT_ELASTIC_STIFFNESS;
     }
 
-    @Override
-    protected void onLayout(boolean changed, int l, int t, int r, int b) {
-        super.onLayout(changed, l, t, r, b);
-        mIsLayoutDirty = false;
-        // Give a child focus if it needs it
-        if (mChildToScrollTo != null && isViewDescendantOf(mChildToScrollTo, this)) {
-            scrollToChild(mChildToScrollTo);
-        }
-        mChildToScrollTo = null;
-
-        // Calling this with the present values causes it to re-claim them
-        handleScrollTo(getScrollX(), getScrollY());
+    public float getElasticStiffness() {
+        return mElasticStiffness;
     }
 
-    @Override
-    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
-        super.onSizeChanged(w, h, oldw, oldh);
-
-        View currentFocused = findFocus();
-        if (null == currentFocused || this == currentFocused)
-            return;
+    private int getElasticLimitX() {
+        return (getWidth() - getPaddingLeft() - getPaddingRight()) / 2;
+    }
 
-        // If the currently-focused view was visible on the screen when the
-        // screen was at the old height, then scroll the screen to make that
-        // view visible with the new screen height.
-        if (isWithinDeltaOfScreen(currentFocused, 0, oldw, 0, oldh)) {
-            currentFocused.getDrawingRect(mTempRect);
-            offsetDescendantRectToMyCoords(currentFocused, mTempRect);
-            int scrollDeltaX = computeScrollXDeltaToGetChildRectOnScreen(mTempRect);
-            int scrollDeltaY = computeScrollYDeltaToGetChildRectOnScreen(mTempRect);
-            doScroll(scrollDeltaX, scrollDeltaY);
-        }
+    private int getElasticLimitY() {
+        return (getHeight() - getPaddingTop() - getPaddingBottom()) / 2;
     }
 
     /**
-     * Return true if child is a descendant of parent, (or equal to the parent).
+     * Damps the part of a drag delta going past an edge, the more the content
+     * is already past it. Moving back towards the content is not damped.
+     *
+     * @param delta the drag delta on the axis
+     * @param scroll the current scroll position on the axis
+     * @param range the scroll range of the axis
+     * @param limit the distance past the edge where the content stops
+     * @return the delta to apply
      */
-    private static boolean isViewDescendantOf(View child, View parent) {
-        if (child == parent) {
-            return true;
+    private static int applyElasticResistance(int delta, int scroll, int range, int limit) {
+        if (limit <= 0) {
+            return delta;
         }
-
-        final ViewParent theParent = child.getParent();
-        return (theParent instanceof ViewGroup) && isViewDescendantOf((View) theParent, parent);
+        if (delta < 0 && scroll + delta < 0) {
+            final int inside = Math.max(0, scroll);
+            final float resistance = 1f - Math.min(1f, (float) Math.max(0, -scroll) / limit);
+            return -inside + Math.round((delta + inside) * resistance);
+        } else if (delta > 0 && scroll + delta > range) {
+            final int inside = Math.max(0, range - scroll);
+            final float resistance = 1f - Math.min(1f, (float) Math.max(0, scroll - range) / limit);
+            return inside + Math.round((delta - inside) * resistance);
+        }
+        return delta;
     }
 
     /**
-     * Fling the scroll view
+     * Starts springing back the axes that are past their edges.
      *
-     * @param velocityY The initial velocity in the Y direction. Positive
-     *                  numbers mean that the finger/cursor is moving down the screen,
-     *                  which means we want to scroll towards the top.
+     * @param velocityX the initial velocity on the X axis, in pixels per second
+     * @param velocityY the initial velocity on the Y axis, in pixels per second
+     * @return true if a spring was started
      */
-    public void fling(int velocityX, int velocityY) {
-        if (getChildCount() > 0) {
-            int height = getHeight() - getPaddingBottom() - getPaddingTop();
-            int bottom = getChildAt(0).getHeight();
-            int width = getWidth() - getPaddingRight() - getPaddingLeft();
-            int right = getChildAt(0).getWidth();
-
-            mScroller.fling(getScrollX(), getScrollY(), velocityX, velocityY, 0,  Math.max(0, right - width), 0,
-                    Math.max(0, bottom - height), width/2, height/2);
-
-//            if (mFlingStrictSpan == null) {
-//                mFlingStrictSpan = StrictMode.enterCriticalSpan("ScrollView-fling");
-//            }
-
-            postInvalidateOnAnimation();
+    private boolean startElasticSpring(float velocityX, float velocityY) {
+        final int scrollX = getScrollX();
+        final int scrollY = getScrollY();
+        final int rangeX = getScrollRangeX();
+        final int rangeY = getScrollRangeY();
+        boolean started = false;
+        if (scrollX < 0 || scrollX > rangeX) {
+            mElasticSpringX.start(scrollX, 0, rangeX, velocityX);
+            started = true;
+        }
+        if (scrollY < 0 || scrollY > rangeY) {
+            mElasticSpringY.start(scrollY, 0, rangeY, velocityY);
+            started = true;
+        }
+        if (started) {
+            mElasticLastTime = AnimationUtils.currentAnimationTimeMillis();
         }
+        return started;
     }
 
-    private void endDrag() {
-        mIsBeingDragged = false;
+    private void stopElasticSpring() {
+        mElasticSpringX.running = false;
+        mElasticSpringY.running = false;
+    }
 
-        recycleVelocityTracker();
+    private boolean isElasticSpringRunning() {
+        return mElasticSpringX.running || mElasticSpringY.running;
+    }
 
-        if (ICE_CREAM_OR_GREATER && mEdgeGlowTop != null) {
-            mEdgeGlowTop.onRelease();
-            mEdgeGlowBottom.onRelease();
-            mEdgeGlowLeft.onRelease();
+    /**
+     * Advances the elastic springs by one frame. Called from the frame pump
+     * after the scroller, which may have handed an axis over.
+     *
+     * @return true if a spring needs another frame
+     */
+    private boolean advanceElasticSpring() {
+        if (!isElasticSpringRunning()) {
+            return false;
+        }
+        final long now = AnimationUtils.currentAnimationTimeMillis();
+        final float elapsed = (now - mElasticLastTime) / 1000f;
+        mElasticLastTime = now;
+        int x = getScrollX();
+        int y = getScrollY();
+        if (mElasticSpringX.running) {
+            mElasticSpringX.step(elapsed, mElasticStiffness, getElasticLimitX());
+            x = Math.round(mElasticSpringX.position);
+        }
+        if (mElasticSpringY.running) {
+            mElasticSpringY.step(elapsed, mElasticStiffness, getElasticLimitY());
+            y = Math.round(mElasticSpringY.position);
+        }
+        if (x != getScrollX() || y != getScrollY()) {
+            super.scrollTo(x, y);
+            awakenScrollBars();
+        }
+        if (!isElasticSpringRunning()) {
+            if (!mIsBeingDragged && mScroller.isFinished()) {
+                demoteChildLayer();
+            }
+            return false;
+        }
+        return true;
+    }
+
+	/**
+	 * Called by the frame pump once per frame while it is scheduled.
+	 */
+	private void onAnimationFrame() {
+		finishAnimationFrame(advanceAnimations());
+	}
+
+	/**
+	 * Moves the content for this frame, first half of
+	 * {@link #onAnimationFrame()}.
+	 *
+	 * @return true if an animation needs another frame
+	 */
+	private boolean advanceAnimations() {
+		processScrollQueue();
+		boolean more = advanceScrub();
+		if (advanceScrollAnimation()) {
+			more = true;
+		}
+		if (advanceElasticSpring()) {
+			more = true;
+		}
+		if (advanceQueuedScroll()) {
+			more = true;
+		}
+		if (advanceKeyScroll()) {
+			more = true;
+		}
+		return more;
+	}
+
+	/**
+	 * Updates everything depending on the position of this frame, second
+	 * half of {@link #onAnimationFrame()}.
+	 */
+	private void finishAnimationFrame(boolean more) {
+		updateCulling();
+		applyScrollEffects();
+		dispatchScrollUpdates();
+		dispatchViewportUpdates();
+		dispatchPrefetchRegion();
+		if (more) {
+			mFramePump.schedule();
+		} else {
+			updateIdleState();
+		}
+	}
+
+    /**
+     * Queues a scroll to the given position. Requests queued within the same
+     * frame are coalesced into a single scroll (or animation) to the final
+     * position.
+     *
+     * @param x the position where to scroll on the X axis
+     * @param y the position where to scroll on the Y axis
+     * @return the request, which can be cancelled
+     */
+    public ScrollRequest queueScrollTo(int x, int y) {
+        return queueScroll(x, y, false, false, SCROLL_PRIORITY_NORMAL,
+                DEFAULT_QUEUED_SCROLL_DURATION, null, null);
+    }
+
+    /**
+     * Like {@link #queueScrollTo}, but scroll smoothly instead of immediately.
+     */
+    public ScrollRequest queueSmoothScrollTo(int x, int y) {
+        return queueScroll(x, y, false, true, SCROLL_PRIORITY_NORMAL,
+                DEFAULT_QUEUED_SCROLL_DURATION, null, null);
+    }
+
+    /**
+     * Queues a scroll by the given delta, relative to the position targeted by
+     * the requests queued before it.
+     *
+     * @param dx the number of pixels to scroll by on the X axis
+     * @param dy the number of pixels to scroll by on the Y axis
+     * @return the request, which can be cancelled
+     */
+    public ScrollRequest queueScrollBy(int dx, int dy) {
+        return queueScroll(dx, dy, true, false, SCROLL_PRIORITY_NORMAL,
+                DEFAULT_QUEUED_SCROLL_DURATION, null, null);
+    }
+
+    /**
+     * Like {@link #queueScrollBy}, but scroll smoothly instead of immediately.
+     */
+    public ScrollRequest queueSmoothScrollBy(int dx, int dy) {
+        return queueScroll(dx, dy, true, true, SCROLL_PRIORITY_NORMAL,
+                DEFAULT_QUEUED_SCROLL_DURATION, null, null);
+    }
+
+    /**
+     * Queues a scroll request. All the requests queued within a frame are
+     * applied in order on the next frame and result in at most one scroll
+     * animation targeting the final position. Requests of a lower priority
+     * than the highest one of the batch are dropped, and a batch never
+     * interrupts a running queued scroll of a higher priority. The
+     * animation uses the duration and interpolator of the last request of
+     * the batch. Touching the view or starting a fling cancels it.
+     *
+     * @param x the target position, or delta if relative, on the X axis
+     * @param y the target position, or delta if relative, on the Y axis
+     * @param relative true if x and y are deltas
+     * @param smooth true to animate the scroll
+     * @param priority the priority, for example {@link #SCROLL_PRIORITY_NORMAL}
+     * @param duration the duration of the animation in milliseconds
+     * @param interpolator the interpolator of the animation, null for the default
+     * @param listener notified when the request completes or is cancelled, can be null
+     * @return the request, which can be cancelled
+     */
+    public ScrollRequest queueScroll(int x, int y, boolean relative, boolean smooth,
+            int priority, int duration, Interpolator interpolator,
+            OnScrollCompleteListener listener) {
+        final ScrollRequest request = new ScrollRequest(this, x, y, relative, smooth,
+                priority, Math.max(0, duration),
+                interpolator != null ? interpolator : DEFAULT_QUEUED_SCROLL_INTERPOLATOR,
+                listener);
+        mPendingScrollRequests.add(request);
+        mFramePump.schedule();
+        return request;
+    }
+
+    /**
+     * @return true if a queued scroll is pending or animating
+     */
+    public boolean isQueuedScrollInProgress() {
+        return mQueuedScrollRunning || !mPendingScrollRequests.isEmpty();
+    }
+
+    /**
+     * Cancels all the pending and running scroll requests.
+     */
+    public void cancelQueuedScrolls() {
+        final ScrollRequest[] pending = mPendingScrollRequests.toArray(
+                new ScrollRequest[mPendingScrollRequests.size()]);
+        mPendingScrollRequests.clear();
+        finishScrollRequests(pending, true);
+        abortQueuedScroll();
+        updateIdleState();
+    }
+
+    void cancelScrollRequest(ScrollRequest request) {
+        if (request.mState == ScrollRequest.STATE_PENDING) {
+            mPendingScrollRequests.remove(request);
+        } else if (request.mState == ScrollRequest.STATE_RUNNING) {
+            mRunningScrollRequests.remove(request);
+            if (mRunningScrollRequests.isEmpty()) {
+                // nothing wants this animation anymore, stop where we are
+                mQueuedScrollRunning = false;
+            }
+        } else {
+            return;
+        }
+        request.finish(true);
+        updateIdleState();
+    }
+
+    /**
+     * Stops the running queued scroll, cancelling its requests.
+     */
+    private void abortQueuedScroll() {
+        if (mQueuedScrollRunning) {
+            mQueuedScrollRunning = false;
+            finishRunningScrollRequests(true);
+        }
+    }
+
+    private void finishRunningScrollRequests(boolean cancelled) {
+        if (mRunningScrollRequests.isEmpty()) {
+            return;
+        }
+        final ScrollRequest[] running = mRunningScrollRequests.toArray(
+                new ScrollRequest[mRunningScrollRequests.size()]);
+        mRunningScrollRequests.clear();
+        finishScrollRequests(running, cancelled);
+    }
+
+    private static void finishScrollRequests(ScrollRequest[] requests, boolean cancelled) {
+        for (ScrollRequest request : requests) {
+            request.finish(cancelled);
+        }
+    }
+
+    /**
+     * Coalesces the requests queued since the last frame into one scroll.
+     */
+    private void processScrollQueue() {
+        final int count = mPendingScrollRequests.size();
+        if (count == 0) {
+            return;
+        }
+        // listeners may queue new requests, work on a snapshot
+        final ScrollRequest[] batch = mPendingScrollRequests.toArray(new ScrollRequest[count]);
+        mPendingScrollRequests.clear();
+
+        int priority = Integer.MIN_VALUE;
+        for (ScrollRequest request : batch) {
+            priority = Math.max(priority, request.mPriority);
+        }
+        if (mQueuedScrollRunning && mQueuedScrollPriority > priority) {
+            finishScrollRequests(batch, true);
+            return;
+        }
+
+        if (mQueuedScrollRunning && priority > mQueuedScrollPriority) {
+            // superseded, the new batch starts from where the content is
+            mQueuedScrollRunning = false;
+            finishRunningScrollRequests(true);
+        }
+        int targetX = mQueuedScrollRunning ? mQueuedScrollTargetX : getScrollX();
+        int targetY = mQueuedScrollRunning ? mQueuedScrollTargetY : getScrollY();
+        ScrollRequest last = null;
+        for (ScrollRequest request : batch) {
+            if (request.mPriority < priority) {
+                request.finish(true);
+                continue;
+            }
+            if (request.mRelative) {
+                targetX += request.mX;
+                targetY += request.mY;
+            } else {
+                targetX = request.mX;
+                targetY = request.mY;
+            }
+            request.mState = ScrollRequest.STATE_RUNNING;
+            mRunningScrollRequests.add(request);
+            last = request;
+        }
+        targetX = Math.max(0, Math.min(targetX, getScrollRangeX()));
+        targetY = Math.max(0, Math.min(targetY, getScrollRangeY()));
+
+        if (!mScroller.isFinished()) {
+            mScroller.abortAnimation();
+        }
+        final int scrollX = getScrollX();
+        final int scrollY = getScrollY();
+        if (!last.mSmooth || last.mDuration == 0 || (targetX == scrollX && targetY == scrollY)) {
+            mQueuedScrollRunning = false;
+            scrollTo(targetX, targetY);
+            finishRunningScrollRequests(false);
+            return;
+        }
+        mQueuedScrollRunning = true;
+        mQueuedScrollPriority = priority;
+        mQueuedScrollStartX = scrollX;
+        mQueuedScrollStartY = scrollY;
+        mQueuedScrollTargetX = targetX;
+        mQueuedScrollTargetY = targetY;
+        mQueuedScrollStartTime = AnimationUtils.currentAnimationTimeMillis();
+        mQueuedScrollDuration = last.mDuration;
+        mQueuedScrollInterpolator = last.mInterpolator;
+        setScrollState(SCROLL_STATE_SETTLING);
+    }
+
+    /**
+     * Advances the queued scroll animation by one frame.
+     *
+     * @return true if the animation needs another frame
+     */
+    private boolean advanceQueuedScroll() {
+        if (!mQueuedScrollRunning) {
+            return false;
+        }
+        final long elapsed = AnimationUtils.currentAnimationTimeMillis() - mQueuedScrollStartTime;
+        final float t = Math.min(1f, elapsed / (float) mQueuedScrollDuration);
+        final float fraction = mQueuedScrollInterpolator.getInterpolation(t);
+        final int x = mQueuedScrollStartX
+                + Math.round((mQueuedScrollTargetX - mQueuedScrollStartX) * fraction);
+        final int y = mQueuedScrollStartY
+                + Math.round((mQueuedScrollTargetY - mQueuedScrollStartY) * fraction);
+        if (x != getScrollX() || y != getScrollY()) {
+            scrollTo(x, y);
+        }
+        if (t >= 1f) {
+            mQueuedScrollRunning = false;
+            finishRunningScrollRequests(false);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds a listener told about scroll position changes once per frame.
+     *
+     * @param listener the listener to add
+     */
+    public void addOnScrollListener(OnScrollListener listener) {
+        addOnScrollListener(listener, DELIVER_EVERY_FRAME, 0);
+    }
+
+    /**
+     * Adds a scroll listener with its own delivery policy. Position changes
+     * are batched and delivered at most once per frame, whatever the number
+     * of input events or animation steps that happened within that frame.
+     *
+     * @param listener the listener to add
+     * @param delivery {@link #DELIVER_EVERY_FRAME}, {@link #DELIVER_EVERY_DISTANCE}
+     *        or {@link #DELIVER_ON_IDLE}
+     * @param distance for {@link #DELIVER_EVERY_DISTANCE}, the distance in pixels
+     *        the position has to move on either axis before the listener is told
+     */
+    public void addOnScrollListener(OnScrollListener listener, int delivery, int distance) {
+        if (listener == null) {
+            return;
+        }
+        removeOnScrollListener(listener);
+        mScrollListeners.add(new ScrollListenerEntry(listener, delivery,
+                Math.max(1, distance), getScrollX(), getScrollY()));
+    }
+
+    public void removeOnScrollListener(OnScrollListener listener) {
+        for (int i = mScrollListeners.size() - 1; i >= 0; i--) {
+            if (mScrollListeners.get(i).mListener == listener) {
+                mScrollListeners.remove(i);
+            }
+        }
+    }
+
+    /**
+     * @return the current scroll state, for example {@link #SCROLL_STATE_IDLE}
+     */
+    public int getScrollState() {
+        return mScrollState;
+    }
+
+    private void setScrollState(int state) {
+        if (state == mScrollState) {
+            return;
+        }
+        mScrollState = state;
+        if (mScrollGroup != null && state != SCROLL_STATE_IDLE) {
+            mScrollGroup.onMemberDriving(this);
+        }
+        // flush the batched position first, idle listeners are waiting for it
+        mScrollUpdatePending = true;
+        dispatchScrollUpdates();
+        if (mScrollListeners.isEmpty()) {
+            return;
+        }
+        final ScrollListenerEntry[] entries = mScrollListeners.toArray(
+                new ScrollListenerEntry[mScrollListeners.size()]);
+        for (ScrollListenerEntry entry : entries) {
+            entry.mListener.onScrollStateChanged(this, state);
+        }
+    }
+
+    /**
+     * Goes back to {@link #SCROLL_STATE_IDLE} if nothing moves the content anymore.
+     */
+    private void updateIdleState() {
+        if (!mIsBeingDragged && mScroller.isFinished() && !mQueuedScrollRunning
+                && mKeyScrollDirection == 0 && !isElasticSpringRunning()
+                && mFastScrollTarget == FAST_SCROLL_NONE) {
+            setScrollState(SCROLL_STATE_IDLE);
+        }
+    }
+
+    @Override
+    protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+        super.onScrollChanged(l, t, oldl, oldt);
+        if (mScrollGroup != null) {
+            mScrollGroup.onMemberScrolled(this, l, t);
+        }
+        if (!mScrollListeners.isEmpty()) {
+            mScrollUpdatePending = true;
+            mFramePump.schedule();
+        }
+        if (!mScrollEffects.isEmpty()) {
+            mScrollEffectsPending = true;
+            mFramePump.schedule();
+        }
+        if (mMinimap != null) {
+            mMinimap.scheduleIdleRendering();
+        }
+        final int directionX = l != oldl ? (l > oldl ? 1 : -1) : mPrefetchDirectionX;
+        final int directionY = t != oldt ? (t > oldt ? 1 : -1) : mPrefetchDirectionY;
+        if (mCellInflater != null && (directionX == -mPrefetchDirectionX && directionX != 0
+                || directionY == -mPrefetchDirectionY && directionY != 0)) {
+            // the queued cells were predicted for the side we are leaving
+            mCellInflater.cancelPending();
+        }
+        mPrefetchDirectionX = directionX;
+        mPrefetchDirectionY = directionY;
+        if (mPrefetchRegionListener != null) {
+            mPrefetchPending = true;
+            mFramePump.schedule();
+        }
+        invalidateViewport();
+        invalidateCulling();
+    }
+
+    /**
+     * Delivers the batched position to the scroll listeners that want it.
+     */
+    private void dispatchScrollUpdates() {
+        if (!mScrollUpdatePending) {
+            return;
+        }
+        mScrollUpdatePending = false;
+        if (mScrollListeners.isEmpty()) {
+            return;
+        }
+        final int scrollX = getScrollX();
+        final int scrollY = getScrollY();
+        final boolean idle = mScrollState == SCROLL_STATE_IDLE;
+        final ScrollListenerEntry[] entries = mScrollListeners.toArray(
+                new ScrollListenerEntry[mScrollListeners.size()]);
+        for (ScrollListenerEntry entry : entries) {
+            entry.dispatch(this, scrollX, scrollY, idle);
+        }
+    }
+
+    /**
+     * Binds a render property of a view to the scroll position, for example
+     * to fade or translate a header with parallax. Effects are evaluated once
+     * per frame, right before it is drawn, and only change render properties,
+     * so they never cause a layout or an extra draw pass. The value is only
+     * set when it changed. Only has an effect on Honeycomb and up.
+     *
+     * @param target the view to drive, usually a descendant of this view
+     * @param property the property to drive, for example {@link #EFFECT_ALPHA}
+     * @param axis the scroll axis to follow, {@link #EFFECT_AXIS_X} or
+     *        {@link #EFFECT_AXIS_Y}
+     * @param mapping maps the scroll position to the value of the property
+     * @return the effect, to pass to {@link #removeScrollEffect}
+     */
+    public ScrollEffect addScrollEffect(View target, int property, int axis,
+            ScrollEffectMapping mapping) {
+        final ScrollEffect effect = new ScrollEffect(target, property, axis, mapping);
+        if (HONEYCOMB_OR_GREATER) {
+            mScrollEffects.add(effect);
+            mScrollEffectsPending = true;
+            mFramePump.schedule();
+        }
+        return effect;
+    }
+
+    /**
+     * Like {@link #addScrollEffect(View, int, int, ScrollEffectMapping)}, with
+     * the value going linearly from valueStart to valueEnd while the scroll
+     * position goes from scrollStart to scrollEnd, and clamped outside.
+     */
+    public ScrollEffect addScrollEffect(View target, int property, int axis,
+            int scrollStart, int scrollEnd, float valueStart, float valueEnd) {
+        return addScrollEffect(target, property, axis,
+                new LinearScrollEffectMapping(scrollStart, scrollEnd, valueStart, valueEnd));
+    }
+
+    /**
+     * Removes an effect. The property keeps its last value.
+     */
+    public void removeScrollEffect(ScrollEffect effect) {
+        mScrollEffects.remove(effect);
+    }
+
+    public void removeAllScrollEffects() {
+        mScrollEffects.clear();
+    }
+
+    private void applyScrollEffects() {
+        if (!mScrollEffectsPending) {
+            return;
+        }
+        mScrollEffectsPending = false;
+        final int scrollX = getScrollX();
+        final int scrollY = getScrollY();
+        for (int i = 0, count = mScrollEffects.size(); i < count; i++) {
+            mScrollEffects.get(i).apply(scrollX, scrollY);
+        }
+    }
+
+    /**
+     * Sets a listener told, at most once per frame while scrolling, about
+     * the region of the content that is next to be scrolled in: the viewport
+     * moved one viewport further in the direction the content is moving. It
+     * can queue work for the cells of that region, for example text layouts
+     * with {@link #setTextLayoutPrefetcher}.
+     */
+    public void setOnPrefetchRegionListener(OnPrefetchRegionListener listener) {
+        mPrefetchRegionListener = listener;
+        mLastPrefetchRegion.setEmpty();
+    }
+
+    /**
+     * Sets the prefetcher given to the {@link OnPrefetchRegionListener}, so
+     * it can measure the texts of the cells about to be scrolled in. The
+     * cells then get them as they are bound, with
+     * {@link TextLayoutPrefetcher#setText} or
+     * {@link TextLayoutPrefetcher#getLayout}.
+     */
+    public void setTextLayoutPrefetcher(TextLayoutPrefetcher prefetcher) {
+        mTextLayoutPrefetcher = prefetcher;
+    }
+
+    public TextLayoutPrefetcher getTextLayoutPrefetcher() {
+        return mTextLayoutPrefetcher;
+    }
+
+    /**
+     * Sets the inflater pre-inflating cells for the content. Its queued
+     * inflations are cancelled whenever the scroll direction reverses on
+     * either axis, since they were predicted for the region the content is
+     * now moving away from. Cells for the new region are usually queued from
+     * the {@link OnPrefetchRegionListener}.
+     */
+    public void setAsyncCellInflater(AsyncCellInflater inflater) {
+        mCellInflater = inflater;
+    }
+
+    public AsyncCellInflater getAsyncCellInflater() {
+        return mCellInflater;
+    }
+
+    /**
+     * @return the group this view was added to, or null
+     */
+    public ScrollGroup getScrollGroup() {
+        return mScrollGroup;
+    }
+
+    /**
+     * Moves the frame pump to the clock of a group, or back to its own.
+     */
+    private void setScrollGroup(ScrollGroup group, boolean linkX, boolean linkY) {
+        final boolean scheduled = mFramePump.mScheduled;
+        mFramePump.cancel();
+        mScrollGroup = group;
+        mScrollGroupLinkX = linkX;
+        mScrollGroupLinkY = linkY;
+        if (scheduled) {
+            mFramePump.schedule();
+        }
+    }
+
+    /**
+     * Stops what moves the content, another member of the group drives the
+     * shared position now.
+     */
+    private void stopScrollAnimations() {
+        if (!mScroller.isFinished()) {
+            mScroller.abortAnimation();
+        }
+        abortQueuedScroll();
+        if (isElasticSpringRunning()) {
+            super.scrollTo(mElasticSpringX.running ? mElasticSpringX.target : getScrollX(),
+                    mElasticSpringY.running ? mElasticSpringY.target : getScrollY());
+            stopElasticSpring();
+        }
+        mKeyScrollDirection = 0;
+        updateIdleState();
+    }
+
+    private void dispatchPrefetchRegion() {
+        if (!mPrefetchPending) {
+            return;
+        }
+        mPrefetchPending = false;
+        final OnPrefetchRegionListener listener = mPrefetchRegionListener;
+        final Rect region = mPrefetchRegion;
+        if (listener == null || !getViewport(region)) {
+            return;
+        }
+        region.offset(mPrefetchDirectionX * (getWidth() - getPaddingLeft() - getPaddingRight()),
+                mPrefetchDirectionY * (getHeight() - getPaddingTop() - getPaddingBottom()));
+        if (!region.intersect(0, 0, getContentWidth(), getContentHeight())
+                || region.equals(mLastPrefetchRegion)) {
+            return;
+        }
+        mLastPrefetchRegion.set(region);
+        listener.onPrefetchRegion(this, region, mTextLayoutPrefetcher);
+    }
+
+    /**
+     * Adds a listener told about the regions of the content that become
+     * visible or hidden. Changes are published at most once per frame.
+     *
+     * @param listener the listener to add
+     */
+    public void addOnViewportChangeListener(OnViewportChangeListener listener) {
+        if (listener == null || mViewportListeners.contains(listener)) {
+            return;
+        }
+        if (mEnteredRegions == null) {
+            mEnteredRegions = new Rect[4];
+            mExitedRegions = new Rect[4];
+            for (int i = 0; i < 4; i++) {
+                mEnteredRegions[i] = new Rect();
+                mExitedRegions[i] = new Rect();
+            }
+        }
+        mViewportListeners.add(listener);
+        // the new listener needs the whole viewport, the others only changes
+        mNewViewportListeners.add(listener);
+        invalidateViewport();
+    }
+
+    public void removeOnViewportChangeListener(OnViewportChangeListener listener) {
+        mViewportListeners.remove(listener);
+        mNewViewportListeners.remove(listener);
+    }
+
+    /**
+     * Snap the published viewport to a grid of tiles, so that listeners are
+     * only told when a new row or column of tiles becomes visible.
+     *
+     * @param tileWidth the width of a tile, 0 to not snap horizontally
+     * @param tileHeight the height of a tile, 0 to not snap vertically
+     */
+    public void setViewportTileSize(int tileWidth, int tileHeight) {
+        mViewportTileWidth = Math.max(0, tileWidth);
+        mViewportTileHeight = Math.max(0, tileHeight);
+        invalidateViewport();
+    }
+
+    /**
+     * Returns the visible part of the content, in the coordinates of the child.
+     *
+     * @param outRect the rect receiving the viewport
+     * @return false if there is no child or nothing of it is visible
+     */
+    public boolean getViewport(Rect outRect) {
+        if (getChildCount() == 0) {
+            outRect.setEmpty();
+            return false;
+        }
+        final View child = getChildAt(0);
+        final int left = getScrollX() + getPaddingLeft() - child.getLeft();
+        final int top = getScrollY() + getPaddingTop() - child.getTop();
+        outRect.set(left, top,
+                left + getWidth() - getPaddingLeft() - getPaddingRight(),
+                top + getHeight() - getPaddingTop() - getPaddingBottom());
+        // ignore the overscrolled part
+        return outRect.intersect(0, 0, getContentWidth(), getContentHeight());
+    }
+
+    private void invalidateViewport() {
+        if (!mViewportListeners.isEmpty()) {
+            mViewportUpdatePending = true;
+            mFramePump.schedule();
+        }
+    }
+
+    /**
+     * Publishes the regions that entered and exited the viewport since the
+     * last call.
+     */
+    private void dispatchViewportUpdates() {
+        if (!mViewportUpdatePending) {
+            return;
+        }
+        mViewportUpdatePending = false;
+        if (mViewportListeners.isEmpty()) {
+            return;
+        }
+        final Rect viewport = mViewport;
+        if (!getViewport(viewport)) {
+            viewport.setEmpty();
+        } else {
+            snapToTiles(viewport, mViewportTileWidth, mViewportTileHeight);
+        }
+        final OnViewportChangeListener[] newListeners = mNewViewportListeners.toArray(
+                new OnViewportChangeListener[mNewViewportListeners.size()]);
+        if (!viewport.equals(mLastViewport)) {
+            final int enteredCount = subtractRect(viewport, mLastViewport, mEnteredRegions);
+            final int exitedCount = subtractRect(mLastViewport, viewport, mExitedRegions);
+            mLastViewport.set(viewport);
+
+            final OnViewportChangeListener[] listeners = mViewportListeners.toArray(
+                    new OnViewportChangeListener[mViewportListeners.size()]);
+            for (OnViewportChangeListener listener : listeners) {
+                if (!mNewViewportListeners.contains(listener)) {
+                    listener.onViewportChanged(this, viewport, mEnteredRegions, enteredCount,
+                            mExitedRegions, exitedCount);
+                }
+            }
+        }
+        for (OnViewportChangeListener listener : newListeners) {
+            // listeners added during the callbacks are told on the next update
+            if (!mNewViewportListeners.remove(listener)) {
+                continue;
+            }
+            // everything visible entered for it
+            final int enteredCount = viewport.isEmpty() ? 0 : 1;
+            mEnteredRegions[0].set(viewport);
+            listener.onViewportChanged(this, viewport, mEnteredRegions, enteredCount,
+                    mExitedRegions, 0);
+        }
+    }
+
+    /**
+     * Grows the rect to the boundaries of the tiles it touches.
+     */
+    private static void snapToTiles(Rect rect, int tileWidth, int tileHeight) {
+        if (tileWidth > 0) {
+            rect.left = floorToMultiple(rect.left, tileWidth);
+            rect.right = -floorToMultiple(-rect.right, tileWidth);
+        }
+        if (tileHeight > 0) {
+            rect.top = floorToMultiple(rect.top, tileHeight);
+            rect.bottom = -floorToMultiple(-rect.bottom, tileHeight);
+        }
+    }
+
+    private static int floorToMultiple(int value, int step) {
+        int result = (value / step) * step;
+        if (result > value) {
+            result -= step;
+        }
+        return result;
+    }
+
+    /**
+     * Computes a minus b as at most four non overlapping rects: the bands
+     * above and below b spanning the width of a, and the parts left and
+     * right of b in between.
+     *
+     * @return the number of rects written to out
+     */
+    static int subtractRect(Rect a, Rect b, Rect[] out) {
+        if (a.isEmpty()) {
+            return 0;
+        }
+        if (b.isEmpty() || !Rect.intersects(a, b)) {
+            out[0].set(a);
+            return 1;
+        }
+        int count = 0;
+        if (b.top > a.top) {
+            out[count++].set(a.left, a.top, a.right, b.top);
+        }
+        if (b.bottom < a.bottom) {
+            out[count++].set(a.left, b.bottom, a.right, a.bottom);
+        }
+        final int top = Math.max(a.top, b.top);
+        final int bottom = Math.min(a.bottom, b.bottom);
+        if (b.left > a.left) {
+            out[count++].set(a.left, top, b.left, bottom);
+        }
+        if (b.right < a.right) {
+            out[count++].set(b.right, top, a.right, bottom);
+        }
+        return count;
+    }
+
+    /**
+     * Skip drawing the children of the given container while they are off
+     * screen. See {@link #setCullingContainer(ViewGroup, int, int)}.
+     *
+     * @param container a descendant of this view, null to stop culling
+     */
+    public void setCullingContainer(ViewGroup container) {
+        setCullingContainer(container, 1, 0);
+    }
+
+    /**
+     * Skip drawing the descendants of the given container while they are off
+     * screen. Views further than margin pixels from the viewport are culled,
+     * and drawn again as they get closer. The view holding the focus never is.
+     * <p>The visibility of the views is left alone, so they stay focusable
+     * and accessible. The container, and each group down to the given depth,
+     * skips them by asking {@link #isCulled(View)} when drawing:</p>
+     *
+     * <pre>
+     * &#64;Override
+     * protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+     *     return !mScrollView.isCulled(child) &amp;&amp; super.drawChild(canvas, child, drawingTime);
+     * }
+     * </pre>
+     *
+     * @param container a descendant of this view, null to stop culling
+     * @param depth how many levels below the container to cull, for example 2
+     *        for a row of columns of cells
+     * @param margin the distance from the viewport under which views are drawn
+     */
+    public void setCullingContainer(ViewGroup container, int depth, int margin) {
+        restoreCulledViews();
+        mCullingContainer = container;
+        mCullingDepth = Math.max(1, depth);
+        mCullingMargin = Math.max(0, margin);
+        mCullingUpdatePending = true;
+        updateCulling();
+    }
+
+    /**
+     * @return the number of views currently culled
+     */
+    public int getCulledViewCount() {
+        return mCulledViews.size();
+    }
+
+    /**
+     * @param child a descendant of the culling container
+     * @return true if the child is too far from the viewport to be drawn
+     */
+    public boolean isCulled(View child) {
+        return mCulledViews.contains(child);
+    }
+
+    private void invalidateCulling() {
+        if (mCullingContainer != null || mAccessibilityGridContainer != null) {
+            mCullingUpdatePending = true;
+            mFramePump.schedule();
+        }
+    }
+
+    private void restoreCulledViews() {
+        if (mCulledViews.isEmpty()) {
+            return;
+        }
+        for (View view : mCulledViews) {
+            final ViewParent parent = view.getParent();
+            if (parent instanceof View) {
+                ((View) parent).invalidate();
+            }
+        }
+        mCulledViews.clear();
+    }
+
+    private void updateCulling() {
+        if (!mCullingUpdatePending) {
+            return;
+        }
+        mCullingUpdatePending = false;
+        updateAccessibilityGrid();
+        final ViewGroup container = mCullingContainer;
+        if (container == null) {
+            return;
+        }
+        if (!isViewDescendantOf(container, this)) {
+            restoreCulledViews();
+            return;
+        }
+        final Rect rect = mCullingRect;
+        final int margin = mCullingMargin;
+        rect.set(getScrollX() + getPaddingLeft() - margin,
+                getScrollY() + getPaddingTop() - margin,
+                getScrollX() + getWidth() - getPaddingRight() + margin,
+                getScrollY() + getHeight() - getPaddingBottom() + margin);
+        offsetRectIntoDescendantCoords(container, rect);
+        cullChildren(container, rect, mCullingDepth);
+    }
+
+    /**
+     * @param parent the group whose children to cull
+     * @param rect the area to keep, in the coordinates of parent's children
+     * @param depth how many levels to go down
+     */
+    private void cullChildren(ViewGroup parent, Rect rect, int depth) {
+        final int count = parent.getChildCount();
+        for (int i = 0; i < count; i++) {
+            final View child = parent.getChildAt(i);
+            if (rect.intersects(child.getLeft(), child.getTop(), child.getRight(), child.getBottom())) {
+                if (mCulledViews.remove(child)) {
+                    parent.invalidate();
+                }
+                if (depth > 1 && child instanceof ViewGroup) {
+                    final int offsetX = child.getScrollX() - child.getLeft();
+                    final int offsetY = child.getScrollY() - child.getTop();
+                    rect.offset(offsetX, offsetY);
+                    cullChildren((ViewGroup) child, rect, depth - 1);
+                    rect.offset(-offsetX, -offsetY);
+                }
+            } else if (child.hasFocus() ? mCulledViews.remove(child) : mCulledViews.add(child)) {
+                parent.invalidate();
+            }
+        }
+    }
+
+    /**
+     * Scrolls the view to the given child.
+     *
+     * @param child the View to scroll to
+     */
+    private void scrollToChild(View child) {
+        child.getDrawingRect(mTempRect);
+
+        /* Offset from child's local coordinates to ScrollView coordinates */
+        offsetDescendantRectToMyCoords(child, mTempRect);
+
+        int scrollXDelta = computeScrollXDeltaToGetChildRectOnScreen(mTempRect);
+        int scrollYDelta = computeScrollYDeltaToGetChildRectOnScreen(mTempRect);
+
+        if (scrollXDelta != 0 || scrollYDelta != 0 ) {
+            scrollBy(scrollXDelta, scrollYDelta);
+        }
+    }
+
+    /**
+     * If rect is off screen, scroll just enough to get it (or at least the
+     * first screen size chunk of it) on screen.
+     *
+     * @param rect      The rectangle.
+     * @param immediate True to scroll immediately without animation
+     * @return true if scrolling was performed
+     */
+    private boolean scrollToChildRect(Rect rect, boolean immediate) {
+        final int deltaX = computeScrollXDeltaToGetChildRectOnScreen(rect);
+        final int deltaY = computeScrollYDeltaToGetChildRectOnScreen(rect);
+        final boolean scroll = (deltaX != 0 || deltaY != 0);
+        if (scroll) {
+            if (immediate) {
+                scrollBy(deltaX, deltaY);
+            } else {
+                smoothScrollBy(deltaX, deltaY);
+            }
+        }
+        return scroll;
+    }
+
+    /**
+     * Compute the amount to scroll in the Y direction in order to get
+     * a rectangle completely on the screen (or, if taller than the screen,
+     * at least the first screen size chunk of it).
+     *
+     * @param rect The rect.
+     * @return The scroll delta.
+     */
+    protected int computeScrollYDeltaToGetChildRectOnScreen(Rect rect) {
+        if (getChildCount() == 0) return 0;
+
+        int height = getHeight();
+        int screenTop = getScrollY();
+        int screenBottom = screenTop + height;
+
+        int fadingEdge = getVerticalFadingEdgeLength();
+
+        // leave room for top fading edge as long as rect isn't at very top
+        if (rect.top > 0) {
+            screenTop += fadingEdge;
+        }
+
+        // leave room for bottom fading edge as long as rect isn't at very bottom
+        if (rect.bottom < getContentHeight()) {
+            screenBottom -= fadingEdge;
+        }
+
+        int scrollYDelta = 0;
+
+        if (rect.bottom > screenBottom && rect.top > screenTop) {
+            // need to move down to get it in view: move down just enough so
+            // that the entire rectangle is in view (or at least the first
+            // screen size chunk).
+
+            if (rect.height() > height) {
+                // just enough to get screen size chunk on
+                scrollYDelta += (rect.top - screenTop);
+            } else {
+                // get entire rect at bottom of screen
+                scrollYDelta += (rect.bottom - screenBottom);
+            }
+
+            // make sure we aren't scrolling beyond the end of our content
+            int bottom = getContentBottom();
+            int distanceToBottom = bottom - screenBottom;
+            scrollYDelta = Math.min(scrollYDelta, distanceToBottom);
+
+        } else if (rect.top < screenTop && rect.bottom < screenBottom) {
+            // need to move up to get it in view: move up just enough so that
+            // entire rectangle is in view (or at least the first screen
+            // size chunk of it).
+
+            if (rect.height() > height) {
+                // screen size chunk
+                scrollYDelta -= (screenBottom - rect.bottom);
+            } else {
+                // entire rect at top
+                scrollYDelta -= (screenTop - rect.top);
+            }
+
+            // make sure we aren't scrolling any further than the top our content
+            scrollYDelta = Math.max(scrollYDelta, -getScrollY());
+        }
+        return scrollYDelta;
+    }
+
+    protected int computeScrollXDeltaToGetChildRectOnScreen(Rect rect) {
+        if (getChildCount() == 0) return 0;
+
+        int width = getWidth();
+        int screenLeft = getScrollX();
+        int screenRight = screenLeft + width;
+
+        int fadingEdge = getHorizontalFadingEdgeLength();
+
+        // leave room for top fading edge as long as rect isn't at very top
+        if (rect.left > 0) {
+            screenLeft += fadingEdge;
+        }
+
+        // leave room for bottom fading edge as long as rect isn't at very bottom
+        if (rect.right < getContentWidth()) {
+            screenRight -= fadingEdge;
+        }
+
+        int scrollXDelta = 0;
+
+        if (rect.right > screenRight && rect.left > screenLeft) {
+            // need to move down to get it in view: move down just enough so
+            // that the entire rectangle is in view (or at least the first
+            // screen size chunk).
+
+            if (rect.width() > width) {
+                // just enough to get screen size chunk on
+                scrollXDelta += (rect.left - screenLeft);
+            } else {
+                // get entire rect at bottom of screen
+                scrollXDelta += (rect.right - screenRight);
+            }
+
+            // make sure we aren't scrolling beyond the end of our content
+            int right = getContentRight();
+            int distanceToRight = right - screenRight;
+            scrollXDelta = Math.min(scrollXDelta, distanceToRight);
+
+        } else if (rect.left < screenLeft && rect.right < screenRight) {
+            // need to move up to get it in view: move up just enough so that
+            // entire rectangle is in view (or at least the first screen
+            // size chunk of it).
+
+            if (rect.width() > width) {
+                // screen size chunk
+                scrollXDelta -= (screenRight - rect.right);
+            } else {
+                // entire rect at top
+                scrollXDelta -= (screenLeft - rect.left);
+            }
+
+            // make sure we aren't scrolling any further than the top our content
+            scrollXDelta = Math.max(scrollXDelta, -getScrollX());
+        }
+        return scrollXDelta;
+    }
+
+    @Override
+    public void requestChildFocus(View child, View focused) {
+        if (!mTwoDScrollViewMovedFocus) {
+        if (!mIsLayoutDirty) {
+            scrollToChild(focused);
+        } else {
+            // The child may not be laid out yet, we can't compute the scroll yet
+            mChildToScrollTo = focused;
+        }
+    }
+        super.requestChildFocus(child, focused);
+    }
+
+
+    /**
+     * When looking for focus in children of a scroll view, need to be a little
+     * more careful not to give focus to something that is scrolled off screen.
+     *
+     * This is more expensive than the default {@link android.view.ViewGroup}
+     * implementation, otherwise this behavior might have been made the default.
+     */
+    @Override
+    protected boolean onRequestFocusInDescendants(int direction,
+            Rect previouslyFocusedRect) {
+
+        // convert from forward / backward notation to up / down / left / right
+        // (ugh).
+        if (direction == View.FOCUS_FORWARD) {
+            direction = View.FOCUS_DOWN;
+        } else if (direction == View.FOCUS_BACKWARD) {
+            direction = View.FOCUS_UP;
+        }
+
+        final View nextFocus = previouslyFocusedRect == null ?
+                FocusFinder.getInstance().findNextFocus(this, null, direction) :
+                FocusFinder.getInstance().findNextFocusFromRect(this,
+                        previouslyFocusedRect, direction);
+
+        if (nextFocus == null) {
+            return false;
+        }
+
+        if (isOffScreen(nextFocus)) {
+            return false;
+        }
+
+        return nextFocus.requestFocus(direction, previouslyFocusedRect);
+    }
+
+    @Override
+    public boolean requestChildRectangleOnScreen(View child, Rect rectangle,
+            boolean immediate) {
+        // offset into coordinate space of this scroll view
+        rectangle.offset(child.getLeft() - child.getScrollX(),
+                child.getTop() - child.getScrollY());
+
+        return scrollToChildRect(rectangle, immediate);
+    }
+
+    @Override
+    public void requestLayout() {
+        mIsLayoutDirty = true;
+        invalidateFocusablesCache();
+        // the content is changing, the layer would be redrawn on every frame
+        demoteChildLayer();
+        super.requestLayout();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mMinimap != null) {
+            mMinimap.scheduleIdleRendering();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mFramePump.cancel();
+        if (mAccessibilityScrollEventPending) {
+            mAccessibilityScrollEventPending = false;
+            removeCallbacks(mSendAccessibilityScrollEvent);
+        }
+        mKeyScrollDirection = 0;
+        endScrub();
+        if (mMinimap != null) {
+            mMinimap.cancelIdleRendering();
+        }
+        if (isElasticSpringRunning()) {
+            // don't leave the content past its edges
+            super.scrollTo(mElasticSpringX.running ? mElasticSpringX.target : getScrollX(),
+                    mElasticSpringY.running ? mElasticSpringY.target : getScrollY());
+            stopElasticSpring();
+        }
+        mCullingUpdatePending = false;
+        invalidateFocusablesCache();
+        cancelQueuedScrolls();
+        demoteChildLayer();
+//
+//        if (mScrollStrictSpan != null) {
+//            mScrollStrictSpan.finish();
+//            mScrollStrictSpan = null;
+//        }
+//        if (mFlingStrictSpan != null) {
+//            mFlingStrictSpan.finish();
+//            mFlingStrictSpan = null;
+//        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        super.onLayout(changed, l, t, r, b);
+        mIsLayoutDirty = false;
+        mCanScrollX = getScrollRangeX() > 0;
+        mCanScrollY = getScrollRangeY() > 0;
+        if (mMinimap != null) {
+            mMinimap.onContentLayout();
+        }
+        invalidateViewport();
+        // children moved, cull them before they are drawn in this frame
+        mCullingUpdatePending = true;
+        updateCulling();
+        // Give a child focus if it needs it
+        if (mChildToScrollTo != null && isViewDescendantOf(mChildToScrollTo, this)) {
+            scrollToChild(mChildToScrollTo);
+        }
+        mChildToScrollTo = null;
+
+        // Calling this with the present values causes it to re-claim them
+        handleScrollTo(getScrollX(), getScrollY());
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+
+        View currentFocused = findFocus();
+        if (null == currentFocused || this == currentFocused)
+            return;
+
+        // If the currently-focused view was visible on the screen when the
+        // screen was at the old height, then scroll the screen to make that
+        // view visible with the new screen height.
+        if (isWithinDeltaOfScreen(currentFocused, 0, oldw, 0, oldh)) {
+            currentFocused.getDrawingRect(mTempRect);
+            offsetDescendantRectToMyCoords(currentFocused, mTempRect);
+            int scrollDeltaX = computeScrollXDeltaToGetChildRectOnScreen(mTempRect);
+            int scrollDeltaY = computeScrollYDeltaToGetChildRectOnScreen(mTempRect);
+            doScroll(scrollDeltaX, scrollDeltaY);
+        }
+    }
+
+    /**
+     * Return true if child is a descendant of parent, (or equal to the parent).
+     */
+    private static boolean isViewDescendantOf(View child, View parent) {
+        if (child == parent) {
+            return true;
+        }
+
+        final ViewParent theParent = child.getParent();
+        return (theParent instanceof ViewGroup) && isViewDescendantOf((View) theParent, parent);
+    }
+
+    /**
+     * Fling the scroll view
+     *
+     * @param velocityY The initial velocity in the Y direction. Positive
+     *                  numbers mean that the finger/cursor is moving down the screen,
+     *                  which means we want to scroll towards the top.
+     */
+    public void fling(int velocityX, int velocityY) {
+        if (getChildCount() > 0) {
+            abortQueuedScroll();
+            int height = getHeight() - getPaddingBottom() - getPaddingTop();
+            int bottom = getContentHeight();
+            int width = getWidth() - getPaddingRight() - getPaddingLeft();
+            int right = getContentWidth();
+            int overX = isOverScrollEnabledX() ? width/2 : 0;
+            int overY = isOverScrollEnabledY() ? height/2 : 0;
+
+            if (mOverScrollStyle == OVER_SCROLL_STYLE_ELASTIC) {
+                // the scroller stops at the edges and the spring takes over,
+                // an axis released past its edge springs back right away
+                final int scrollX = getScrollX();
+                final int scrollY = getScrollY();
+                final int rangeX = Math.max(0, right - width);
+                final int rangeY = Math.max(0, bottom - height);
+                if (scrollX < 0 || scrollX > rangeX) {
+                    mElasticSpringX.start(scrollX, 0, rangeX, velocityX);
+                    mElasticLastTime = AnimationUtils.currentAnimationTimeMillis();
+                    velocityX = 0;
+                }
+                if (scrollY < 0 || scrollY > rangeY) {
+                    mElasticSpringY.start(scrollY, 0, rangeY, velocityY);
+                    mElasticLastTime = AnimationUtils.currentAnimationTimeMillis();
+                    velocityY = 0;
+                }
+                overX = overY = 0;
+            }
+
+            mScroller.fling(getScrollX(), getScrollY(), velocityX, velocityY, 0,  Math.max(0, right - width), 0,
+                    Math.max(0, bottom - height), overX, overY);
+            promoteChildLayer();
+            setScrollState(SCROLL_STATE_FLINGING);
+
+//            if (mFlingStrictSpan == null) {
+//                mFlingStrictSpan = StrictMode.enterCriticalSpan("ScrollView-fling");
+//            }
+
+            mFramePump.schedule();
+        }
+    }
+
+    private void endDrag() {
+        mIsBeingDragged = false;
+
+        recycleVelocityTracker();
+        if (mScroller.isFinished()) {
+            demoteChildLayer();
+        }
+        updateIdleState();
+
+        if (mEdgeGlowLeft != null) {
+            mEdgeGlowLeft.onRelease();
             mEdgeGlowRight.onRelease();
         }
+        if (mEdgeGlowTop != null) {
+            mEdgeGlowTop.onRelease();
+            mEdgeGlowBottom.onRelease();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>This version also clamps the scrolling to the bounds of our child.
+     */
+    public void handleScrollTo(int x, int y) {
+        if (shouldClampScroll) {
+	        // we rely on the fact the View.scrollBy calls scrollTo.
+	        if (getChildCount() > 0) {
+	            View child = getChildAt(0);
+	            x = clamp(x, getWidth() - getPaddingRight() - getPaddingLeft(), getContentWidth());
+	            y = clamp(y, getHeight() - getPaddingBottom() - getPaddingTop(), getContentHeight());
+	        }
+        }
+        if (x != getScrollX() || y != getScrollY()) {
+            super.scrollTo(x, y);
+        }
+    }
+
+    @Override
+    public void scrollTo(int x, int y) {
+//      shouldClampScroll = false;
+        handleScrollTo(x, y);
+    }
+
+    public void setShouldClamp(boolean clamp) {
+        shouldClampScroll = clamp;
+    }
+
+    @Override
+    public void setOverScrollMode(int mode) {
+        setOverScrollMode(mode, mode);
+    }
+
+    /**
+     * Sets the over-scroll mode of each axis independently. The edge effects
+     * of an axis are only allocated while its mode is not
+     * {@link #OVER_SCROLL_NEVER}, and a disabled axis skips all the
+     * over-scroll work when dragging and flinging.
+     * <p>{@link #getOverScrollMode()} returns the most permissive of both.</p>
+     *
+     * @param horizontalMode one of {@link #OVER_SCROLL_ALWAYS},
+     *        {@link #OVER_SCROLL_IF_CONTENT_SCROLLS} or {@link #OVER_SCROLL_NEVER}
+     * @param verticalMode same for the vertical axis
+     */
+    public void setOverScrollMode(int horizontalMode, int verticalMode) {
+        mOverScrollModeX = horizontalMode;
+        mOverScrollModeY = verticalMode;
+        if (ICE_CREAM_OR_GREATER) {
+            final boolean glow = mOverScrollStyle == OVER_SCROLL_STYLE_GLOW;
+            if (glow && horizontalMode != OVER_SCROLL_NEVER) {
+                if (mEdgeGlowLeft == null) {
+                    mEdgeGlowLeft = new EdgeEffect(getContext());
+                    mEdgeGlowRight = new EdgeEffect(getContext());
+                }
+            } else {
+                mEdgeGlowLeft = null;
+                mEdgeGlowRight = null;
+            }
+            if (glow && verticalMode != OVER_SCROLL_NEVER) {
+                if (mEdgeGlowTop == null) {
+                    mEdgeGlowTop = new EdgeEffect(getContext());
+                    mEdgeGlowBottom = new EdgeEffect(getContext());
+                }
+            } else {
+                mEdgeGlowTop = null;
+                mEdgeGlowBottom = null;
+            }
+        }
+        // the constants are ordered from the most to the least permissive
+        super.setOverScrollMode(Math.min(horizontalMode, verticalMode));
+    }
+
+    public int getOverScrollModeX() {
+        return mOverScrollModeX;
+    }
+
+    public int getOverScrollModeY() {
+        return mOverScrollModeY;
+    }
+
+    /**
+     * Sets how far the content can be dragged past its edges on each axis.
+     * Defaults to {@link ViewConfiguration#getScaledOverscrollDistance()}.
+     */
+    public void setOverScrollDistance(int distanceX, int distanceY) {
+        mOverscrollDistanceX = Math.max(0, distanceX);
+        mOverscrollDistanceY = Math.max(0, distanceY);
+    }
+
+    /**
+     * Sets how far a fling can carry the content past its edges on each axis.
+     * Defaults to {@link ViewConfiguration#getScaledOverflingDistance()}.
+     */
+    public void setOverflingDistance(int distanceX, int distanceY) {
+        mOverflingDistanceX = Math.max(0, distanceX);
+        mOverflingDistanceY = Math.max(0, distanceY);
+    }
+
+    private boolean isOverScrollEnabledX() {
+        return mOverScrollModeX == OVER_SCROLL_ALWAYS
+                || (mOverScrollModeX == OVER_SCROLL_IF_CONTENT_SCROLLS && mCanScrollX);
+    }
+
+    private boolean isOverScrollEnabledY() {
+        return mOverScrollModeY == OVER_SCROLL_ALWAYS
+                || (mOverScrollModeY == OVER_SCROLL_IF_CONTENT_SCROLLS && mCanScrollY);
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        if (mChildLayerPromoted) {
+            mLayerFrameCount++;
+        }
+        super.draw(canvas);
+        if (mEdgeGlowTop != null || mEdgeGlowLeft != null) {
+            final int scrollX = getScrollX();
+            final int scrollY = getScrollY();
+            final int width = getWidth() - getPaddingLeft() - getPaddingRight();
+            final int height = getHeight() - getPaddingTop() - getPaddingBottom();
+            if (mEdgeGlowTop != null && !mEdgeGlowTop.isFinished()) {
+                final int restoreCount = canvas.save();
+
+                canvas.translate(getPaddingLeft() + scrollX, Math.min(0, scrollY));
+                mEdgeGlowTop.setSize(width, getHeight());
+                if (mEdgeGlowTop.draw(canvas)) {
+                    postInvalidateOnAnimation();
+                }
+                canvas.restoreToCount(restoreCount);
+            }
+            if (mEdgeGlowBottom != null && !mEdgeGlowBottom.isFinished()) {
+                final int restoreCount = canvas.save();
+                canvas.translate(getPaddingLeft() + scrollX,
+                        Math.max(getScrollRangeY(), scrollY) + height);
+                canvas.rotate(180, width/2, 0);
+                mEdgeGlowBottom.setSize(width, height);
+                if (mEdgeGlowBottom.draw(canvas)) {
+                    postInvalidateOnAnimation();
+                }
+                canvas.restoreToCount(restoreCount);
+            }
+
+            if (mEdgeGlowLeft != null && !mEdgeGlowLeft.isFinished()) {
+                final int restoreCount = canvas.save();
+
+                canvas.translate(Math.min(0, scrollX), getPaddingTop() + scrollY + height);
+                canvas.rotate(-90, 0, 0);
+                mEdgeGlowLeft.setSize(height, width);
+                if (mEdgeGlowLeft.draw(canvas)) {
+                    postInvalidateOnAnimation();
+                }
+                canvas.restoreToCount(restoreCount);
+            }
+            if (mEdgeGlowRight != null && !mEdgeGlowRight.isFinished()) {
+                final int restoreCount = canvas.save();
+
+                canvas.translate(Math.max(getScrollRangeX(), scrollX) + getWidth(), getPaddingTop() + scrollY);
+                canvas.rotate(90, 0, 0);
+                mEdgeGlowRight.setSize(height, width);
+                if (mEdgeGlowRight.draw(canvas)) {
+                    postInvalidateOnAnimation();
+                }
+                canvas.restoreToCount(restoreCount);
+            }
+        }
+        if (mFastScrollEnabled) {
+            drawFastScroll(canvas);
+        }
+        if (mMinimap != null) {
+            mMinimap.draw(canvas);
+        }
+    }
+
+    private void drawFastScroll(Canvas canvas) {
+        final RectF rect = mFastScrollRect;
+        final Paint paint = mFastScrollPaint;
+        final int restoreCount = canvas.save();
+        canvas.translate(getScrollX(), getScrollY());
+        final float radius = mFastScrollThickness / 2f;
+        if (getFastScrollThumbRect(FAST_SCROLL_HORIZONTAL, rect)) {
+            canvas.drawRoundRect(rect, radius, radius, paint);
+        }
+        if (getFastScrollThumbRect(FAST_SCROLL_VERTICAL, rect)) {
+            canvas.drawRoundRect(rect, radius, radius, paint);
+        }
+        if (getFastScrollThumbRect(FAST_SCROLL_PUCK, rect)) {
+            final float puckRadius = mFastScrollPuckSize / 2f;
+            canvas.drawRoundRect(rect, puckRadius, puckRadius, paint);
+        }
+        canvas.restoreToCount(restoreCount);
+    }
+
+    private static int clamp(int n, int my, int child) {
+        if (my >= child || n < 0) {
+            /* my >= child is this case:
+             *                    |--------------- me ---------------|
+             *     |------ child ------|
+             * or
+             *     |--------------- me ---------------|
+             *            |------ child ------|
+             * or
+             *     |--------------- me ---------------|
+             *                                  |------ child ------|
+             *
+             * n < 0 is this case:
+             *     |------ me ------|
+             *                    |-------- child --------|
+             *     |-- getScrollX() --|
+             */
+            return 0;
+        }
+        if ((my+n) > child) {
+            /* this case:
+             *                    |------ me ------|
+             *     |------ child ------|
+             *     |-- getScrollX() --|
+             */
+            return child-my;
+        }
+        return n;
+    }
+
+    /**
+     * Interface definition for a callback to be invoked when a queued scroll
+     * request completes.
+     */
+    public interface OnScrollCompleteListener {
+        /**
+         * @param view the scroll view
+         * @param cancelled true if the request was cancelled or superseded by
+         *        a request of a higher priority before reaching its target
+         */
+        void onScrollComplete(DualScrollView view, boolean cancelled);
+    }
+
+    /**
+     * A scroll request queued with {@link DualScrollView#queueScroll}. Can be
+     * used to cancel the request.
+     */
+    public static final class ScrollRequest {
+        static final int STATE_PENDING = 0;
+        static final int STATE_RUNNING = 1;
+        static final int STATE_DONE = 2;
+        static final int STATE_CANCELLED = 3;
+
+        private final DualScrollView mView;
+        final int mX;
+        final int mY;
+        final boolean mRelative;
+        final boolean mSmooth;
+        final int mPriority;
+        final int mDuration;
+        final Interpolator mInterpolator;
+        private final OnScrollCompleteListener mListener;
+        int mState = STATE_PENDING;
+
+        ScrollRequest(DualScrollView view, int x, int y, boolean relative, boolean smooth,
+                int priority, int duration, Interpolator interpolator,
+                OnScrollCompleteListener listener) {
+            mView = view;
+            mX = x;
+            mY = y;
+            mRelative = relative;
+            mSmooth = smooth;
+            mPriority = priority;
+            mDuration = duration;
+            mInterpolator = interpolator;
+            mListener = listener;
+        }
+
+        /**
+         * Cancels the request. Does nothing if it already completed.
+         */
+        public void cancel() {
+            mView.cancelScrollRequest(this);
+        }
+
+        public boolean isCancelled() {
+            return mState == STATE_CANCELLED;
+        }
+
+        /**
+         * @return true if the request completed or was cancelled
+         */
+        public boolean isFinished() {
+            return mState == STATE_DONE || mState == STATE_CANCELLED;
+        }
+
+        void finish(boolean cancelled) {
+            if (isFinished()) {
+                return;
+            }
+            mState = cancelled ? STATE_CANCELLED : STATE_DONE;
+            if (mListener != null) {
+                mListener.onScrollComplete(mView, cancelled);
+            }
+        }
+    }
+
+    /**
+     * Interface definition for a callback to be invoked when the scroll
+     * position or the scroll state changes.
+     */
+    public interface OnScrollListener {
+        /**
+         * @param view the scroll view
+         * @param newState the new state, for example {@link #SCROLL_STATE_IDLE}
+         */
+        void onScrollStateChanged(DualScrollView view, int newState);
+
+        /**
+         * @param view the scroll view
+         * @param scrollX the current horizontal position
+         * @param scrollY the current vertical position
+         * @param dx the horizontal distance since this listener was last called
+         * @param dy the vertical distance since this listener was last called
+         */
+        void onScrolled(DualScrollView view, int scrollX, int scrollY, int dx, int dy);
+    }
+
+    /**
+     * Interface definition for a callback to be invoked when the visible part
+     * of the content changes. All rects are in the coordinates of the child
+     * and are only valid during the call.
+     */
+    public interface OnViewportChangeListener {
+        /**
+         * @param view the scroll view
+         * @param viewport the visible part of the content, snapped to tiles if set
+         * @param entered the regions that became visible
+         * @param enteredCount the number of valid rects in entered, at most 4
+         * @param exited the regions that are not visible anymore
+         * @param exitedCount the number of valid rects in exited, at most 4
+         */
+        void onViewportChanged(DualScrollView view, Rect viewport, Rect[] entered,
+                int enteredCount, Rect[] exited, int exitedCount);
+    }
+
+    /**
+     * Describes grid content to accessibility services, see
+     * {@link DualScrollView#setAccessibilityGrid}.
+     */
+    public interface AccessibilityGridAdapter {
+        int getRowCount();
+
+        int getColumnCount();
+
+        /**
+         * @return the row of the given cell view, -1 if it is not a cell
+         */
+        int getCellRow(View cell);
+
+        /**
+         * @return the column of the given cell view, -1 if it is not a cell
+         */
+        int getCellColumn(View cell);
+
+        /**
+         * @return the view of the given cell, null if it does not exist
+         */
+        View findCellView(int row, int column);
+    }
+
+    /**
+     * Critically damped spring pulling one axis of the scroll position back
+     * to its closest edge.
+     */
+    private static final class ElasticSpring {
+        boolean running;
+        float position;
+        float velocity;
+        int target;
+
+        void start(int scroll, int min, int max, float initialVelocity) {
+            position = scroll;
+            velocity = initialVelocity;
+            target = Math.max(min, Math.min(max, scroll));
+            running = true;
+        }
+
+        /**
+         * @param elapsed the time since the last step, in seconds
+         * @param stiffness the stiffness of the spring, in 1/s^2
+         * @param limit the farthest the position can go past the target
+         */
+        void step(float elapsed, float stiffness, int limit) {
+            final float damping = 2f * (float) Math.sqrt(stiffness);
+            while (elapsed > 0) {
+                final float dt = Math.min(elapsed, ELASTIC_MAX_STEP);
+                velocity += (-stiffness * (position - target) - damping * velocity) * dt;
+                position += velocity * dt;
+                elapsed -= dt;
+            }
+            if (position - target > limit) {
+                position = target + limit;
+                velocity = Math.min(0, velocity);
+            } else if (target - position > limit) {
+                position = target - limit;
+                velocity = Math.max(0, velocity);
+            }
+            if (Math.abs(position - target) < 0.5f && Math.abs(velocity) < ELASTIC_REST_VELOCITY) {
+                position = target;
+                velocity = 0;
+                running = false;
+            }
+        }
+    }
+
+    /**
+     * Rebinds the cells of grid content after the notifyRows and
+     * notifyColumns calls of {@link DualScrollView}.
+     */
+    public interface GridCellBinder {
+        /**
+         * Rebinds the visible cells of the given range, with the new
+         * indexes. Other cells keep their views, the next layout only moves
+         * them. On an axis without a size model, the range is not limited
+         * to the visible cells.
+         *
+         * @param view the scroll view
+         * @param firstRow the first row to rebind
+         * @param rowCount the number of rows, -1 for all the rows when there
+         *        is no row model
+         * @param firstColumn the first column to rebind
+         * @param columnCount the number of columns, -1 for all the columns
+         *        when there is no column model
+         */
+        void onRebindCells(DualScrollView view, int firstRow, int rowCount,
+                int firstColumn, int columnCount);
+    }
+
+    /**
+     * Told about the region of the content about to be scrolled in, see
+     * {@link DualScrollView#setOnPrefetchRegionListener}.
+     */
+    public interface OnPrefetchRegionListener {
+        /**
+         * @param view the scroll view
+         * @param region the region, in the coordinates of the child. It is
+         *        reused, copy it to keep it.
+         * @param prefetcher the prefetcher set on the view, can be null
+         */
+        void onPrefetchRegion(DualScrollView view, Rect region, TextLayoutPrefetcher prefetcher);
+    }
+
+    /**
+     * Maps a scroll position to the value of a property, see
+     * {@link DualScrollView#addScrollEffect}.
+     */
+    public interface ScrollEffectMapping {
+        /**
+         * @param scroll the scroll position on the axis of the effect, it
+         *        can be out of the scroll range while over-scrolling
+         * @return the value of the property
+         */
+        float map(int scroll);
+    }
+
+    /**
+     * A render property bound to the scroll position.
+     */
+    public static final class ScrollEffect {
+        final View mTarget;
+        final int mProperty;
+        final int mAxis;
+        final ScrollEffectMapping mMapping;
+        private float mLastValue = Float.NaN;
+
+        ScrollEffect(View target, int property, int axis, ScrollEffectMapping mapping) {
+            mTarget = target;
+            mProperty = property;
+            mAxis = axis;
+            mMapping = mapping;
+        }
+
+        void apply(int scrollX, int scrollY) {
+            final float value = mMapping.map(mAxis == EFFECT_AXIS_X ? scrollX : scrollY);
+            if (value == mLastValue) {
+                return;
+            }
+            mLastValue = value;
+            switch (mProperty) {
+                case EFFECT_TRANSLATION_X:
+                    mTarget.setTranslationX(value);
+                    break;
+                case EFFECT_TRANSLATION_Y:
+                    mTarget.setTranslationY(value);
+                    break;
+                case EFFECT_ALPHA:
+                    mTarget.setAlpha(value);
+                    break;
+                case EFFECT_SCALE_X:
+                    mTarget.setScaleX(value);
+                    break;
+                case EFFECT_SCALE_Y:
+                    mTarget.setScaleY(value);
+                    break;
+                case EFFECT_ROTATION:
+                    mTarget.setRotation(value);
+                    break;
+            }
+        }
     }
 
     /**
-     * {@inheritDoc}
-     *
-     * <p>This version also clamps the scrolling to the bounds of our child.
+     * Linear mapping clamped to its range of values.
      */
-    public void handleScrollTo(int x, int y) {
-        if (shouldClampScroll) {
-	        // we rely on the fact the View.scrollBy calls scrollTo.
-	        if (getChildCount() > 0) {
-	            View child = getChildAt(0);
-	            x = clamp(x, getWidth() - getPaddingRight() - getPaddingLeft(), child.getWidth());
-	            y = clamp(y, getHeight() - getPaddingBottom() - getPaddingTop(), child.getHeight());
-	        }
+    private static final class LinearScrollEffectMapping implements ScrollEffectMapping {
+        private final int mScrollStart;
+        private final int mScrollEnd;
+        private final float mValueStart;
+        private final float mValueEnd;
+
+        LinearScrollEffectMapping(int scrollStart, int scrollEnd, float valueStart, float valueEnd) {
+            mScrollStart = scrollStart;
+            mScrollEnd = scrollEnd;
+            mValueStart = valueStart;
+            mValueEnd = valueEnd;
         }
-        if (x != getScrollX() || y != getScrollY()) {
-            super.scrollTo(x, y);
+
+        @Override
+        public float map(int scroll) {
+            if (mScrollEnd == mScrollStart) {
+                return scroll < mScrollStart ? mValueStart : mValueEnd;
+            }
+            float fraction = (float) (scroll - mScrollStart) / (mScrollEnd - mScrollStart);
+            fraction = Math.max(0f, Math.min(1f, fraction));
+            return mValueStart + (mValueEnd - mValueStart) * fraction;
         }
     }
 
-    @Override
-    public void scrollTo(int x, int y) {
-//      shouldClampScroll = false;
-        handleScrollTo(x, y);
-    }
+    /**
+     * Downscaled thumbnail of the content, split in tiles rendered while the
+     * main thread is idle.
+     */
+    private final class Minimap implements MessageQueue.IdleHandler {
+        final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        final Paint mViewportPaint = new Paint();
+        final Rect mInvalidRect = new Rect();
+        private final Rect mTileRect = new Rect();
+        private final Rect mRenderableRect = new Rect();
+        private final RectF mBounds = new RectF();
+        /**
+         * Invalidated content not yet marked dirty, tiles are dirtied at most
+         * once per {@link #MINIMAP_DIRTY_INTERVAL} so that animations do not
+         * keep the thumbnail rendering.
+         */
+        private final Rect mPendingDirtyRect = new Rect();
+        private long mLastDirtyTime;
+        private boolean mDirtyFlushPosted;
+        private boolean mRendering;
+        private final Runnable mFlushDirty = new Runnable() {
+            @Override
+            public void run() {
+                flushDirty();
+            }
+        };
+        int mMaxWidth;
+        int mMaxHeight;
+        float mScale;
+        private Bitmap mBitmap;
+        private Canvas mCanvas;
+        private int mContentWidth;
+        private int mContentHeight;
+        private int mTileColumns;
+        private boolean[] mDirtyTiles;
+        private int mDirtyCount;
+        private boolean mIdleHandlerAdded;
+
+        Minimap() {
+            mMaxWidth = mMaxHeight = (int) (DEFAULT_MINIMAP_SIZE * mDensity + 0.5f);
+            mViewportPaint.setStyle(Paint.Style.STROKE);
+            mViewportPaint.setStrokeWidth(Math.max(1f, mDensity));
+            mViewportPaint.setColor(DEFAULT_MINIMAP_VIEWPORT_COLOR);
+        }
 
-    public void setShouldClamp(boolean clamp) {
-        shouldClampScroll = clamp;
-    }
+        /**
+         * Called once the child was laid out, rebuilds the thumbnail if the
+         * size of the content changed. With size models the thumbnail covers
+         * the whole content, what is not materialized stays blank.
+         */
+        void onContentLayout() {
+            final int contentWidth = getContentWidth();
+            final int contentHeight = getContentHeight();
+            if (mBitmap != null && contentWidth == mContentWidth && contentHeight == mContentHeight
+                    && mBitmap.getWidth() == Math.max(1, Math.round(contentWidth * mScale))
+                    && mBitmap.getHeight() == Math.max(1, Math.round(contentHeight * mScale))) {
+                return;
+            }
+            releaseBitmap();
+            mContentWidth = contentWidth;
+            mContentHeight = contentHeight;
+            if (contentWidth <= 0 || contentHeight <= 0) {
+                return;
+            }
+            mScale = Math.min(1f, Math.min((float) mMaxWidth / contentWidth,
+                    (float) mMaxHeight / contentHeight));
+            final int width = Math.max(1, Math.round(contentWidth * mScale));
+            final int height = Math.max(1, Math.round(contentHeight * mScale));
+            mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+            mBitmap.eraseColor(DEFAULT_MINIMAP_BACKGROUND);
+            mCanvas = new Canvas(mBitmap);
+            mTileColumns = (width + MINIMAP_TILE_SIZE - 1) / MINIMAP_TILE_SIZE;
+            final int tileRows = (height + MINIMAP_TILE_SIZE - 1) / MINIMAP_TILE_SIZE;
+            mDirtyTiles = new boolean[mTileColumns * tileRows];
+            Arrays.fill(mDirtyTiles, true);
+            mDirtyCount = mDirtyTiles.length;
+            scheduleIdleRendering();
+        }
 
-    @Override
-    public void setOverScrollMode(int mode) {
-    	if (ICE_CREAM_OR_GREATER) {
-	        if (mode != OVER_SCROLL_NEVER) {
-	            if (mEdgeGlowTop == null) {
-	                Context context = getContext();
-	                mEdgeGlowTop = new EdgeEffect(context);
-	                mEdgeGlowBottom = new EdgeEffect(context);
-	                mEdgeGlowLeft = new EdgeEffect(context);
-	                mEdgeGlowRight = new EdgeEffect(context);
-	            }
-	        } else {
-	            mEdgeGlowTop = null;
-	            mEdgeGlowBottom = null;
-	            mEdgeGlowLeft = null;
-	            mEdgeGlowRight = null;
-	        }
-    	}
-        super.setOverScrollMode(mode);
+        private void releaseBitmap() {
+            mPendingDirtyRect.setEmpty();
+            if (mBitmap != null) {
+                mBitmap.recycle();
+                mBitmap = null;
+                mCanvas = null;
+                mDirtyTiles = null;
+                mDirtyCount = 0;
+            }
+        }
+
+        void release() {
+            cancelIdleRendering();
+            if (mDirtyFlushPosted) {
+                mDirtyFlushPosted = false;
+                removeCallbacks(mFlushDirty);
+            }
+            releaseBitmap();
+        }
+
+        /**
+         * Marks the tiles covering a region of the content as dirty, right
+         * away if none were for a while, or else with the other regions
+         * invalidated until the interval is over. Invalidations made by the
+         * content while it is drawn into the thumbnail are ignored.
+         */
+        void invalidateContent(int left, int top, int right, int bottom) {
+            if (mDirtyTiles == null || mRendering) {
+                return;
+            }
+            mPendingDirtyRect.union(left, top, right, bottom);
+            if (mDirtyFlushPosted) {
+                return;
+            }
+            final long delay = mLastDirtyTime + MINIMAP_DIRTY_INTERVAL - SystemClock.uptimeMillis();
+            if (delay <= 0) {
+                flushDirty();
+            } else {
+                mDirtyFlushPosted = true;
+                postDelayed(mFlushDirty, delay);
+            }
+        }
+
+        private void flushDirty() {
+            mDirtyFlushPosted = false;
+            mLastDirtyTime = SystemClock.uptimeMillis();
+            final Rect rect = mPendingDirtyRect;
+            if (mDirtyTiles == null || rect.isEmpty()) {
+                return;
+            }
+            final int left = rect.left;
+            final int top = rect.top;
+            final int right = rect.right;
+            final int bottom = rect.bottom;
+            rect.setEmpty();
+            final int tileRows = mDirtyTiles.length / mTileColumns;
+            final float tileSize = MINIMAP_TILE_SIZE / mScale;
+            final int firstColumn = Math.max(0, (int) (left / tileSize));
+            final int lastColumn = Math.min(mTileColumns - 1, (int) ((right - 1) / tileSize));
+            final int firstRow = Math.max(0, (int) (top / tileSize));
+            final int lastRow = Math.min(tileRows - 1, (int) ((bottom - 1) / tileSize));
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    final int index = row * mTileColumns + column;
+                    if (!mDirtyTiles[index]) {
+                        mDirtyTiles[index] = true;
+                        mDirtyCount++;
+                    }
+                }
+            }
+            scheduleIdleRendering();
+        }
+
+        void scheduleIdleRendering() {
+            if (mDirtyCount > 0 && !mIdleHandlerAdded && getWindowToken() != null) {
+                mIdleHandlerAdded = true;
+                Looper.myQueue().addIdleHandler(this);
+            }
+        }
+
+        void cancelIdleRendering() {
+            if (mIdleHandlerAdded) {
+                mIdleHandlerAdded = false;
+                Looper.myQueue().removeIdleHandler(this);
+            }
+        }
+
+        @Override
+        public boolean queueIdle() {
+            final View child = getChildAt(0);
+            if (mDirtyTiles == null || child == null) {
+                mIdleHandlerAdded = false;
+                return false;
+            }
+            // culled views draw nothing, only render what is not culled
+            final Rect renderable = mRenderableRect;
+            final boolean culling = mCullingContainer != null;
+            if (culling) {
+                renderable.set(getScrollX() - mCullingMargin, getScrollY() - mCullingMargin,
+                        getScrollX() + getWidth() + mCullingMargin,
+                        getScrollY() + getHeight() + mCullingMargin);
+                renderable.offset(-child.getLeft(), -child.getTop());
+            }
+            final long deadline = SystemClock.uptimeMillis() + MINIMAP_IDLE_BUDGET;
+            final int tileRows = mDirtyTiles.length / mTileColumns;
+            boolean rendered = false;
+            boolean more = false;
+            for (int i = 0; i < mDirtyTiles.length; i++) {
+                if (!mDirtyTiles[i] || (culling && !isTileRenderable(i, renderable))) {
+                    continue;
+                }
+                if (SystemClock.uptimeMillis() >= deadline) {
+                    more = true;
+                    break;
+                }
+                // one draw of the content for a block of tiles from this one
+                final int column = i % mTileColumns;
+                final int row = i / mTileColumns;
+                final int lastColumn = Math.min(mTileColumns - 1, column + MINIMAP_BATCH_TILES - 1);
+                final int lastRow = Math.min(tileRows - 1, row + MINIMAP_BATCH_TILES - 1);
+                setTileRect(column, row, lastColumn, lastRow);
+                if (culling) {
+                    // leave the tiles of the block over culled views as they are
+                    mTileRect.intersect((int) (renderable.left * mScale),
+                            (int) (renderable.top * mScale),
+                            (int) Math.ceil(renderable.right * mScale),
+                            (int) Math.ceil(renderable.bottom * mScale));
+                }
+                renderTiles(child);
+                for (int blockRow = row; blockRow <= lastRow; blockRow++) {
+                    for (int blockColumn = column; blockColumn <= lastColumn; blockColumn++) {
+                        final int index = blockRow * mTileColumns + blockColumn;
+                        if (mDirtyTiles[index]
+                                && (!culling || isTileRenderable(index, renderable))) {
+                            mDirtyTiles[index] = false;
+                            mDirtyCount--;
+                        }
+                    }
+                }
+                rendered = true;
+            }
+            if (rendered) {
+                invalidateOverlay();
+            }
+            mIdleHandlerAdded = more;
+            return more;
+        }
+
+        /**
+         * Sets the tile rect to the given tiles, inclusive.
+         */
+        private void setTileRect(int column, int row, int lastColumn, int lastRow) {
+            mTileRect.set(column * MINIMAP_TILE_SIZE, row * MINIMAP_TILE_SIZE,
+                    Math.min(mBitmap.getWidth(), (lastColumn + 1) * MINIMAP_TILE_SIZE),
+                    Math.min(mBitmap.getHeight(), (lastRow + 1) * MINIMAP_TILE_SIZE));
+        }
+
+        /**
+         * @param renderable the part of the content that is not culled
+         */
+        private boolean isTileRenderable(int index, Rect renderable) {
+            final int column = index % mTileColumns;
+            final int row = index / mTileColumns;
+            setTileRect(column, row, column, row);
+            return renderable.intersects(
+                    (int) (mTileRect.left / mScale), (int) (mTileRect.top / mScale),
+                    (int) Math.ceil(mTileRect.right / mScale),
+                    (int) Math.ceil(mTileRect.bottom / mScale));
+        }
+
+        /**
+         * Renders the tiles in the tile rect.
+         */
+        private void renderTiles(View child) {
+            final Canvas canvas = mCanvas;
+            final int restoreCount = canvas.save();
+            canvas.clipRect(mTileRect);
+            canvas.drawColor(DEFAULT_MINIMAP_BACKGROUND);
+            canvas.scale(mScale, mScale);
+            mRendering = true;
+            try {
+                child.draw(canvas);
+            } finally {
+                mRendering = false;
+            }
+            canvas.restoreToCount(restoreCount);
+        }
+
+        /**
+         * @param out receives the bounds of the minimap, in the coordinates
+         *        of this view (not of the content)
+         * @return false if there is nothing to show
+         */
+        boolean getBounds(RectF out) {
+            if (mBitmap == null) {
+                return false;
+            }
+            final int margin = (int) (MINIMAP_MARGIN * mDensity + 0.5f);
+            final float right = getWidth() - margin;
+            out.set(right - mBitmap.getWidth(), margin, right, margin + mBitmap.getHeight());
+            return true;
+        }
+
+        private void invalidateOverlay() {
+            final RectF bounds = mBounds;
+            if (mFastScrollTarget == FAST_SCROLL_NONE && getBounds(bounds)) {
+                invalidate(getScrollX() + (int) bounds.left, getScrollY() + (int) bounds.top,
+                        getScrollX() + (int) Math.ceil(bounds.right),
+                        getScrollY() + (int) Math.ceil(bounds.bottom));
+            } else {
+                invalidate();
+            }
+        }
+
+        void draw(Canvas canvas) {
+            final View child = getChildAt(0);
+            final RectF bounds = mBounds;
+            if (child == null || !getBounds(bounds)) {
+                return;
+            }
+            final int restoreCount = canvas.save();
+            canvas.translate(getScrollX() + bounds.left, getScrollY() + bounds.top);
+            canvas.drawBitmap(mBitmap, 0, 0, mBitmapPaint);
+            final float left = (getScrollX() + getPaddingLeft() - child.getLeft()) * mScale;
+            final float top = (getScrollY() + getPaddingTop() - child.getTop()) * mScale;
+            canvas.drawRect(left, top,
+                    left + (getWidth() - getPaddingLeft() - getPaddingRight()) * mScale,
+                    top + (getHeight() - getPaddingTop() - getPaddingBottom()) * mScale,
+                    mViewportPaint);
+            canvas.restoreToCount(restoreCount);
+        }
     }
 
-    @Override
-    public void draw(Canvas canvas) {
-        super.draw(canvas);
-        if (ICE_CREAM_OR_GREATER && mEdgeGlowTop != null) {
-            final int scrollX = getScrollX();
-            final int scrollY = getScrollY();
-            final int width = getWidth() - getPaddingLeft() - getPaddingRight();
-            final int height = getHeight() - getPaddingTop() - getPaddingBottom();
-            if (!mEdgeGlowTop.isFinished()) {
-                final int restoreCount = canvas.save();
+    /**
+     * Links the scroll position of several views, for example the body of a
+     * table with its frozen headers, along the axes each of them shares.
+     * <p>Members share one position per linked axis: when one of them
+     * scrolls, the others are scrolled right away, within the same frame and
+     * without going back through the group, so there is no feedback loop and
+     * no frame of lag. Only one member animates at a time: when a member
+     * starts being dragged or flung, the animations of the others stop and
+     * they follow it. The members also share one frame clock, so that all
+     * their animations and scroll callbacks run in the same frame callback,
+     * once all of them moved.</p>
+     * <p>Members are kept until they are removed. All the methods must be
+     * called from the UI thread.</p>
+     */
+    public static final class ScrollGroup {
+        private final ArrayList<DualScrollView> mMembers = new ArrayList<DualScrollView>();
+        private int mScrollX;
+        private int mScrollY;
+        private boolean mSyncing;
+        private boolean mFrameScheduled;
+        private ChoreographerCallback mFrameCallback;
+        private Handler mHandler;
+        private final Runnable mFrameRunnable = new Runnable() {
+            @Override
+            public void run() {
+                onFrame();
+            }
+        };
+
+        /**
+         * Adds a view to the group. It scrolls right away to the position of
+         * the group on the axes it links.
+         *
+         * @param view the view to add, removed from its previous group
+         * @param linkX true to share the horizontal position
+         * @param linkY true to share the vertical position
+         */
+        public void addView(DualScrollView view, boolean linkX, boolean linkY) {
+            if (view.mScrollGroup != null) {
+                view.mScrollGroup.removeView(view);
+            }
+            final boolean first = mMembers.isEmpty();
+            mMembers.add(view);
+            view.setScrollGroup(this, linkX, linkY);
+            if (first) {
+                mScrollX = view.getScrollX();
+                mScrollY = view.getScrollY();
+            } else {
+                sync(view, linkX, linkY);
+            }
+        }
 
-                canvas.translate(getPaddingLeft() + scrollX, Math.min(0, scrollY));
-                mEdgeGlowTop.setSize(width, getHeight());
-                if (mEdgeGlowTop.draw(canvas)) {
-                    postInvalidateOnAnimation();
+        public void removeView(DualScrollView view) {
+            if (mMembers.remove(view)) {
+                view.setScrollGroup(null, false, false);
+            }
+        }
+
+        /**
+         * Changes the axes a member shares with the group.
+         */
+        public void setLinkedAxes(DualScrollView view, boolean linkX, boolean linkY) {
+            if (view.mScrollGroup == this) {
+                view.mScrollGroupLinkX = linkX;
+                view.mScrollGroupLinkY = linkY;
+                sync(view, linkX, linkY);
+            }
+        }
+
+        /**
+         * @return the shared horizontal position
+         */
+        public int getScrollX() {
+            return mScrollX;
+        }
+
+        /**
+         * @return the shared vertical position
+         */
+        public int getScrollY() {
+            return mScrollY;
+        }
+
+        /**
+         * Scrolls a member to the shared position on the given axes.
+         */
+        private void sync(DualScrollView view, boolean linkX, boolean linkY) {
+            if (!linkX && !linkY) {
+                return;
+            }
+            mSyncing = true;
+            try {
+                view.handleScrollTo(linkX ? mScrollX : view.getScrollX(),
+                        linkY ? mScrollY : view.getScrollY());
+            } finally {
+                mSyncing = false;
+            }
+        }
+
+        void onMemberScrolled(DualScrollView source, int x, int y) {
+            if (mSyncing) {
+                // one of the members following the source
+                return;
+            }
+            final boolean linkX = source.mScrollGroupLinkX && x != mScrollX;
+            final boolean linkY = source.mScrollGroupLinkY && y != mScrollY;
+            if (!linkX && !linkY) {
+                return;
+            }
+            if (linkX) {
+                mScrollX = x;
+            }
+            if (linkY) {
+                mScrollY = y;
+            }
+            final DualScrollView[] members = mMembers.toArray(new DualScrollView[mMembers.size()]);
+            for (DualScrollView member : members) {
+                if (member != source) {
+                    sync(member, linkX && member.mScrollGroupLinkX,
+                            linkY && member.mScrollGroupLinkY);
                 }
-                canvas.restoreToCount(restoreCount);
             }
-            if (!mEdgeGlowBottom.isFinished()) {
-                final int restoreCount = canvas.save();
-                canvas.translate(getPaddingLeft() + scrollX,
-                        Math.max(getScrollRangeY(), scrollY) + height);
-                canvas.rotate(180, width/2, 0);
-                mEdgeGlowBottom.setSize(width, height);
-                if (mEdgeGlowBottom.draw(canvas)) {
-                    postInvalidateOnAnimation();
+        }
+
+        void onMemberDriving(DualScrollView source) {
+            final DualScrollView[] members = mMembers.toArray(new DualScrollView[mMembers.size()]);
+            for (DualScrollView member : members) {
+                if (member != source && member.mScrollState != SCROLL_STATE_IDLE
+                        && (source.mScrollGroupLinkX && member.mScrollGroupLinkX
+                                || source.mScrollGroupLinkY && member.mScrollGroupLinkY)) {
+                    member.stopScrollAnimations();
                 }
-                canvas.restoreToCount(restoreCount);
             }
+        }
 
-            if (!mEdgeGlowLeft.isFinished()) {
-                final int restoreCount = canvas.save();
+        void scheduleFrame() {
+            if (mFrameScheduled) {
+                return;
+            }
+            mFrameScheduled = true;
+            if (JELLY_BEAN_OR_GREATER) {
+                if (mFrameCallback == null) {
+                    mFrameCallback = new ChoreographerCallback(mFrameRunnable);
+                }
+                Choreographer.getInstance().postFrameCallback(mFrameCallback);
+            } else {
+                if (mHandler == null) {
+                    mHandler = new Handler(Looper.getMainLooper());
+                }
+                mHandler.postDelayed(mFrameRunnable, FALLBACK_FRAME_DELAY);
+            }
+        }
 
-                canvas.translate(Math.min(0, scrollX), getPaddingTop() + scrollY + height);
-                canvas.rotate(-90, 0, 0);
-                mEdgeGlowLeft.setSize(height, width);
-                if (mEdgeGlowLeft.draw(canvas)) {
-                    postInvalidateOnAnimation();
+        /**
+         * Runs the frame of all the members that asked for one. All of them
+         * move first, then they all dispatch, so a member moved by another
+         * one during the frame reports its new position in this frame too.
+         */
+        private void onFrame() {
+            if (!mFrameScheduled) {
+                return;
+            }
+            mFrameScheduled = false;
+            final DualScrollView[] members = mMembers.toArray(new DualScrollView[mMembers.size()]);
+            final boolean[] advanced = new boolean[members.length];
+            final boolean[] more = new boolean[members.length];
+            for (int i = 0; i < members.length; i++) {
+                if (members[i].mFramePump.consume()) {
+                    advanced[i] = true;
+                    more[i] = members[i].advanceAnimations();
                 }
-                canvas.restoreToCount(restoreCount);
             }
-            if (!mEdgeGlowRight.isFinished()) {
-                final int restoreCount = canvas.save();
+            for (int i = 0; i < members.length; i++) {
+                if (members[i].mFramePump.consume() || advanced[i]) {
+                    members[i].finishAnimationFrame(more[i]);
+                }
+            }
+        }
+    }
 
-                canvas.translate(Math.max(getScrollRangeX(), scrollX) + getWidth(), getPaddingTop() + scrollY);
-                canvas.rotate(90, 0, 0);
-                mEdgeGlowRight.setSize(height, width);
-                if (mEdgeGlowRight.draw(canvas)) {
-                    postInvalidateOnAnimation();
+    private static final class ScrollListenerEntry {
+        final OnScrollListener mListener;
+        final int mDelivery;
+        final int mDistance;
+        int mLastX;
+        int mLastY;
+
+        ScrollListenerEntry(OnScrollListener listener, int delivery, int distance,
+                int scrollX, int scrollY) {
+            mListener = listener;
+            mDelivery = delivery;
+            mDistance = distance;
+            mLastX = scrollX;
+            mLastY = scrollY;
+        }
+
+        void dispatch(DualScrollView view, int scrollX, int scrollY, boolean idle) {
+            final int dx = scrollX - mLastX;
+            final int dy = scrollY - mLastY;
+            if (dx == 0 && dy == 0) {
+                return;
+            }
+            switch (mDelivery) {
+                case DELIVER_EVERY_DISTANCE:
+                    // always report where the scroll ended
+                    if (!idle && Math.abs(dx) < mDistance && Math.abs(dy) < mDistance) {
+                        return;
+                    }
+                    break;
+                case DELIVER_ON_IDLE:
+                    if (!idle) {
+                        return;
+                    }
+                    break;
+            }
+            mLastX = scrollX;
+            mLastY = scrollY;
+            mListener.onScrolled(view, scrollX, scrollY, dx, dy);
+        }
+    }
+
+    /**
+     * Kept in its own class so that the directional
+     * {@link AccessibilityNodeInfo.AccessibilityAction}s are only loaded on
+     * Marshmallow and up, where they exist.
+     */
+    @TargetApi(Build.VERSION_CODES.M)
+    private static class DirectionalAccessibilityActions {
+        static void add(AccessibilityNodeInfo info, boolean up, boolean down, boolean left,
+                boolean right, boolean toPosition) {
+            if (toPosition) {
+                info.addAction(AccessibilityNodeInfo.AccessibilityAction.ACTION_SCROLL_TO_POSITION);
+            }
+            if (up) {
+                info.addAction(AccessibilityNodeInfo.AccessibilityAction.ACTION_SCROLL_UP);
+            }
+            if (down) {
+                info.addAction(AccessibilityNodeInfo.AccessibilityAction.ACTION_SCROLL_DOWN);
+            }
+            if (left) {
+                info.addAction(AccessibilityNodeInfo.AccessibilityAction.ACTION_SCROLL_LEFT);
+            }
+            if (right) {
+                info.addAction(AccessibilityNodeInfo.AccessibilityAction.ACTION_SCROLL_RIGHT);
+            }
+        }
+    }
+
+    /**
+     * Gives the position of the cells exposed with
+     * {@link DualScrollView#setAccessibilityGrid}.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private class GridCellAccessibilityDelegate extends View.AccessibilityDelegate {
+        @Override
+        public void onInitializeAccessibilityNodeInfo(View host, AccessibilityNodeInfo info) {
+            super.onInitializeAccessibilityNodeInfo(host, info);
+            final AccessibilityGridAdapter adapter = mAccessibilityGridAdapter;
+            if (adapter == null) {
+                return;
+            }
+            final int row = adapter.getCellRow(host);
+            final int column = adapter.getCellColumn(host);
+            if (row >= 0 && column >= 0) {
+                info.setCollectionItemInfo(AccessibilityNodeInfo.CollectionItemInfo.obtain(
+                        row, 1, column, 1, false));
+            }
+        }
+    }
+
+    /**
+     * Schedules {@link #onAnimationFrame()} on the next frame. Uses the
+     * Choreographer vsync callback when available and a delayed post on older
+     * platforms. Scheduling several times within a frame runs it only once.
+     */
+    private class FramePump implements Runnable {
+        private boolean mScheduled;
+        private ChoreographerCallback mFrameCallback;
+
+        void schedule() {
+            if (mScheduled) {
+                return;
+            }
+            mScheduled = true;
+            if (mScrollGroup != null) {
+                mScrollGroup.scheduleFrame();
+            } else if (JELLY_BEAN_OR_GREATER) {
+                if (mFrameCallback == null) {
+                    mFrameCallback = new ChoreographerCallback(this);
                 }
-                canvas.restoreToCount(restoreCount);
+                Choreographer.getInstance().postFrameCallback(mFrameCallback);
+            } else {
+                postDelayed(this, FALLBACK_FRAME_DELAY);
+            }
+        }
+
+        void cancel() {
+            if (!mScheduled) {
+                return;
+            }
+            mScheduled = false;
+            if (mScrollGroup != null) {
+                // the group skips members not scheduled anymore
+                return;
+            }
+            if (JELLY_BEAN_OR_GREATER) {
+                Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            } else {
+                removeCallbacks(this);
             }
         }
+
+        @Override
+        public void run() {
+            if (!mScheduled) {
+                return;
+            }
+            mScheduled = false;
+            onAnimationFrame();
+        }
+
+        /**
+         * Used by the clock of a group instead of {@link #run()}.
+         *
+         * @return true if a frame was scheduled, which is not anymore
+         */
+        boolean consume() {
+            final boolean scheduled = mScheduled;
+            mScheduled = false;
+            return scheduled;
+        }
     }
 
-    private static int clamp(int n, int my, int child) {
-        if (my >= child || n < 0) {
-            /* my >= child is this case:
-             *                    |--------------- me ---------------|
-             *     |------ child ------|
-             * or
-             *     |--------------- me ---------------|
-             *            |------ child ------|
-             * or
-             *     |--------------- me ---------------|
-             *                                  |------ child ------|
-             *
-             * n < 0 is this case:
-             *     |------ me ------|
-             *                    |-------- child --------|
-             *     |-- getScrollX() --|
-             */
-            return 0;
+    /**
+     * Kept in its own class so that {@link Choreographer} is only loaded on
+     * Jelly Bean and up.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class ChoreographerCallback implements Choreographer.FrameCallback {
+        private final Runnable mTarget;
+
+        ChoreographerCallback(Runnable target) {
+            mTarget = target;
         }
-        if ((my+n) > child) {
-            /* this case:
-             *                    |------ me ------|
-             *     |------ child ------|
-             *     |-- getScrollX() --|
-             */
-            return child-my;
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mTarget.run();
         }
-        return n;
     }
 }
@@ -0,0 +1,336 @@
+package com.akylas.view;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Computes the changes between two snapshots of grid content, as the
+ * inserted, removed and changed ranges of rows and columns that
+ * {@link DualScrollView#notifyRowsInserted} and the other notify calls expect.
+ * Rows and columns are matched by their stable ids with the Myers diff
+ * algorithm, in O((N + M) D) time where D is the number of differences, so
+ * small changes to large grids stay cheap. Moved rows or columns are reported
+ * as a removal followed by an insertion.
+ * <p>Rows are reported as changed when one of their cells kept in both
+ * snapshots has a different content hash. The computation does not touch any
+ * view, so it can run on a background thread with
+ * {@link #calculateAsync}.</p>
+ */
+public class GridDiff {
+    public static final int AXIS_ROWS = 0;
+    public static final int AXIS_COLUMNS = 1;
+
+    private static final int OP_INSERT = 0;
+    private static final int OP_REMOVE = 1;
+    private static final int OP_CHANGE = 2;
+
+    private GridDiff() {
+    }
+
+    /**
+     * The ids of the rows and columns of grid content at one point in time,
+     * with the content hashes of its cells. The arrays are not copied and
+     * must not change once the snapshot is given to a diff.
+     */
+    public static final class Snapshot {
+        final long[] mRowIds;
+        final long[] mColumnIds;
+        final int[] mCellHashes;
+
+        /**
+         * @param rowIds the stable id of each row
+         * @param columnIds the stable id of each column
+         * @param cellHashes the content hash of each cell, row after row, or
+         *        null to only compare the structure
+         */
+        public Snapshot(long[] rowIds, long[] columnIds, int[] cellHashes) {
+            if (cellHashes != null && cellHashes.length != rowIds.length * columnIds.length) {
+                throw new IllegalArgumentException("Expected " + rowIds.length * columnIds.length
+                        + " cell hashes, got " + cellHashes.length);
+            }
+            mRowIds = rowIds;
+            mColumnIds = columnIds;
+            mCellHashes = cellHashes;
+        }
+    }
+
+    /**
+     * Receives the changes of a {@link Result}, in an order where each
+     * position is valid when applied after the previous ones.
+     */
+    public interface Callback {
+        void onInserted(int axis, int position, int count);
+
+        void onRemoved(int axis, int position, int count);
+
+        /**
+         * @param position the position of the first changed row or column,
+         *        once all the insertions and removals are applied
+         */
+        void onChanged(int axis, int position, int count);
+    }
+
+    public interface OnDiffCalculatedListener {
+        /**
+         * Called on the UI thread with the result of {@link #calculateAsync}.
+         */
+        void onDiffCalculated(Result result);
+    }
+
+    /**
+     * The changes between two snapshots.
+     */
+    public static final class Result {
+        /**
+         * Each op is {type, axis, position, count}.
+         */
+        private final ArrayList<int[]> mOps = new ArrayList<int[]>();
+
+        void add(int type, int axis, int position, int count) {
+            if (count > 0) {
+                mOps.add(new int[] { type, axis, position, count });
+            }
+        }
+
+        /**
+         * @return true if the snapshots are the same
+         */
+        public boolean isEmpty() {
+            return mOps.isEmpty();
+        }
+
+        public void dispatchUpdatesTo(Callback callback) {
+            for (int[] op : mOps) {
+                switch (op[0]) {
+                    case OP_INSERT:
+                        callback.onInserted(op[1], op[2], op[3]);
+                        break;
+                    case OP_REMOVE:
+                        callback.onRemoved(op[1], op[2], op[3]);
+                        break;
+                    case OP_CHANGE:
+                        callback.onChanged(op[1], op[2], op[3]);
+                        break;
+                }
+            }
+        }
+
+        /**
+         * Applies the changes to a scroll view through its notify calls. Must
+         * be called on the UI thread.
+         *
+         * @param rowSize the height of the inserted rows
+         * @param columnSize the width of the inserted columns
+         */
+        public void dispatchUpdatesTo(final DualScrollView view, final int rowSize,
+                final int columnSize) {
+            dispatchUpdatesTo(new Callback() {
+                @Override
+                public void onInserted(int axis, int position, int count) {
+                    if (axis == AXIS_ROWS) {
+                        view.notifyRowsInserted(position, count, rowSize);
+                    } else {
+                        view.notifyColumnsInserted(position, count, columnSize);
+                    }
+                }
+
+                @Override
+                public void onRemoved(int axis, int position, int count) {
+                    if (axis == AXIS_ROWS) {
+                        view.notifyRowsRemoved(position, count);
+                    } else {
+                        view.notifyColumnsRemoved(position, count);
+                    }
+                }
+
+                @Override
+                public void onChanged(int axis, int position, int count) {
+                    if (axis == AXIS_ROWS) {
+                        view.notifyRowsChanged(position, count);
+                    } else {
+                        view.notifyColumnsChanged(position, count);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Computes the changes from one snapshot to another, on the calling
+     * thread.
+     */
+    public static Result calculate(Snapshot oldSnapshot, Snapshot newSnapshot) {
+        final Result result = new Result();
+        final int[] columns = match(oldSnapshot.mColumnIds, newSnapshot.mColumnIds);
+        final int[] rows = match(oldSnapshot.mRowIds, newSnapshot.mRowIds);
+        addStructuralOps(result, AXIS_COLUMNS, columns, newSnapshot.mColumnIds.length);
+        addStructuralOps(result, AXIS_ROWS, rows, newSnapshot.mRowIds.length);
+        if (oldSnapshot.mCellHashes != null && newSnapshot.mCellHashes != null) {
+            addChangedRows(result, oldSnapshot, newSnapshot, rows, columns);
+        }
+        return result;
+    }
+
+    /**
+     * Computes the changes on the given executor and hands them to the
+     * listener on the UI thread.
+     */
+    public static void calculateAsync(Executor executor, final Snapshot oldSnapshot,
+            final Snapshot newSnapshot, final OnDiffCalculatedListener listener) {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Result result = calculate(oldSnapshot, newSnapshot);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onDiffCalculated(result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Walks the matches from the end, so the positions of the earlier ones
+     * are still those of the old snapshot when each op is applied.
+     */
+    private static void addStructuralOps(Result result, int axis, int[] oldToNew, int newCount) {
+        int oldEnd = oldToNew.length;
+        int newEnd = newCount;
+        for (int i = oldToNew.length - 1; i >= -1; i--) {
+            if (i >= 0 && oldToNew[i] < 0) {
+                continue;
+            }
+            final int newIndex = i >= 0 ? oldToNew[i] : -1;
+            result.add(OP_REMOVE, axis, i + 1, oldEnd - i - 1);
+            result.add(OP_INSERT, axis, i + 1, newEnd - newIndex - 1);
+            oldEnd = i;
+            newEnd = newIndex;
+        }
+    }
+
+    private static void addChangedRows(Result result, Snapshot oldSnapshot, Snapshot newSnapshot,
+            int[] rows, int[] columns) {
+        final int oldColumnCount = oldSnapshot.mColumnIds.length;
+        final int newColumnCount = newSnapshot.mColumnIds.length;
+        final int[] oldHashes = oldSnapshot.mCellHashes;
+        final int[] newHashes = newSnapshot.mCellHashes;
+        int rangeStart = -1;
+        int rangeEnd = -1;
+        for (int oldRow = 0; oldRow < rows.length; oldRow++) {
+            final int newRow = rows[oldRow];
+            if (newRow < 0) {
+                continue;
+            }
+            boolean changed = false;
+            for (int oldColumn = 0; oldColumn < columns.length && !changed; oldColumn++) {
+                final int newColumn = columns[oldColumn];
+                changed = newColumn >= 0 && oldHashes[oldRow * oldColumnCount + oldColumn]
+                        != newHashes[newRow * newColumnCount + newColumn];
+            }
+            if (!changed) {
+                continue;
+            }
+            if (newRow == rangeEnd) {
+                rangeEnd++;
+            } else {
+                result.add(OP_CHANGE, AXIS_ROWS, rangeStart, rangeEnd - rangeStart);
+                rangeStart = newRow;
+                rangeEnd = newRow + 1;
+            }
+        }
+        result.add(OP_CHANGE, AXIS_ROWS, rangeStart, rangeEnd - rangeStart);
+    }
+
+    /**
+     * @return for each old id the index of the same id in the new ids, or -1
+     *         if it is not kept
+     */
+    static int[] match(long[] oldIds, long[] newIds) {
+        final int[] oldToNew = new int[oldIds.length];
+        Arrays.fill(oldToNew, -1);
+        // the common prefix and suffix need no diff
+        int start = 0;
+        while (start < oldIds.length && start < newIds.length && oldIds[start] == newIds[start]) {
+            oldToNew[start] = start;
+            start++;
+        }
+        int oldEnd = oldIds.length;
+        int newEnd = newIds.length;
+        while (oldEnd > start && newEnd > start && oldIds[oldEnd - 1] == newIds[newEnd - 1]) {
+            oldToNew[--oldEnd] = --newEnd;
+        }
+        if (oldEnd > start && newEnd > start) {
+            matchMiddle(oldIds, newIds, start, oldEnd - start, newEnd - start, oldToNew);
+        }
+        return oldToNew;
+    }
+
+    /**
+     * Myers greedy forward search, keeping the diagonals reached after each
+     * step to walk the shortest edit script back.
+     */
+    private static void matchMiddle(long[] a, long[] b, int start, int n, int m, int[] oldToNew) {
+        final int max = n + m;
+        final int offset = max + 1;
+        final int[] v = new int[2 * max + 3];
+        final ArrayList<int[]> trace = new ArrayList<int[]>();
+        int steps = 0;
+        search: for (int d = 0; d <= max; d++) {
+            // diagonals -d..d before this step, all that it reads
+            final int[] saved = new int[2 * d + 1];
+            System.arraycopy(v, offset - d, saved, 0, saved.length);
+            trace.add(saved);
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+                    x = v[offset + k + 1];
+                } else {
+                    x = v[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && a[start + x] == b[start + y]) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    steps = d;
+                    break search;
+                }
+            }
+        }
+        int x = n;
+        int y = m;
+        for (int d = steps; d > 0; d--) {
+            final int[] previous = trace.get(d);
+            final int k = x - y;
+            final int previousK;
+            if (k == -d || (k != d && previous[k - 1 + d] < previous[k + 1 + d])) {
+                previousK = k + 1;
+            } else {
+                previousK = k - 1;
+            }
+            final int previousX = previous[previousK + d];
+            final int previousY = previousX - previousK;
+            while (x > previousX && y > previousY) {
+                x--;
+                y--;
+                oldToNew[start + x] = start + y;
+            }
+            x = previousX;
+            y = previousY;
+        }
+        while (x > 0 && y > 0) {
+            x--;
+            y--;
+            oldToNew[start + x] = start + y;
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package com.akylas.view;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import android.annotation.TargetApi;
+import android.graphics.Typeface;
+import android.os.Build;
+import android.os.Parcel;
+import android.os.Process;
+import android.text.Layout;
+import android.text.ParcelableSpan;
+import android.text.PrecomputedText;
+import android.text.Spanned;
+import android.text.SpannedString;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.style.CharacterStyle;
+import android.text.style.ClickableSpan;
+import android.widget.TextView;
+
+/**
+ * Measures the texts of cells on background threads before they are needed,
+ * so measuring new cells on the UI thread only has to look up the result.
+ * <p>On Pie and up, {@link #prefetch(CharSequence, TextView)} computes a
+ * {@link PrecomputedText} for a {@link TextView} cell, that
+ * {@link #setText(TextView, CharSequence)} hands to the view once it is
+ * ready, so the view does not measure the text again. Custom cells drawing
+ * their own text can instead prefetch a {@link StaticLayout} for a given
+ * width with {@link #prefetch(CharSequence, TextPaint, int)} and find it
+ * with {@link #getLayout}.</p>
+ * <p>Results are keyed by their text with the type, range and attributes of
+ * its spans, and by the settings changing the size of the text, and kept in
+ * an LRU cache. Requests usually come from an
+ * {@link DualScrollView.OnPrefetchRegionListener} with the cells of the region
+ * about to be scrolled in. The cache is only accessed from the UI thread:
+ * completed results are handed over when {@link #drainCompleted()} runs, or
+ * on the next lookup.</p>
+ *
+ * @see DualScrollView#setTextLayoutPrefetcher
+ */
+public class TextLayoutPrefetcher {
+    static final int DEFAULT_CACHE_SIZE = 512;
+
+    private static final boolean MARSHMALLOW_OR_GREATER = (Build.VERSION.SDK_INT >= 23);
+    private static final boolean PIE_OR_GREATER = (Build.VERSION.SDK_INT >= 28);
+
+    private final ExecutorService mExecutor;
+    private final int mMaxCacheSize;
+    /**
+     * Holds a StaticLayout, or a PrecomputedText for keys with text metrics
+     * params.
+     */
+    private final LinkedHashMap<Key, Object> mCache;
+    private final HashMap<Key, Future<?>> mPending = new HashMap<Key, Future<?>>();
+    private final ConcurrentLinkedQueue<Result> mCompleted = new ConcurrentLinkedQueue<Result>();
+    private int mHitCount;
+    private int mMissCount;
+
+    /**
+     * Creates a prefetcher using all the cores but one, and caching up to
+     * {@link #DEFAULT_CACHE_SIZE} layouts.
+     */
+    public TextLayoutPrefetcher() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param threadCount the number of worker threads
+     * @param cacheSize the number of layouts to keep
+     */
+    public TextLayoutPrefetcher(int threadCount, int cacheSize) {
+        mMaxCacheSize = Math.max(1, cacheSize);
+        mCache = new LinkedHashMap<Key, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                return size() > mMaxCacheSize;
+            }
+        };
+        mExecutor = Executors.newFixedThreadPool(Math.max(1, threadCount), new ThreadFactory() {
+            private int mCount;
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "TextLayoutPrefetcher #" + (++mCount));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Queues the computation of a layout, unless it is already cached or
+     * queued. Must be called from the UI thread. The text is copied, so it
+     * can keep changing.
+     *
+     * @param text the text of the cell
+     * @param paint the paint of the text, copied so it can keep changing
+     * @param width the width available to the text, in pixels
+     */
+    public void prefetch(CharSequence text, TextPaint paint, final int width) {
+        final CharSequence snapshot = snapshot(text);
+        final Key key = new Key(snapshot, paint, width, null);
+        if (mCache.containsKey(key) || mPending.containsKey(key)) {
+            return;
+        }
+        final TextPaint workerPaint = new TextPaint(paint);
+        submit(key, new Task() {
+            @Override
+            public Object build() {
+                if (MARSHMALLOW_OR_GREATER) {
+                    return LayoutBuilder.build(snapshot, workerPaint, width);
+                }
+                return new StaticLayout(snapshot, workerPaint, width,
+                        Layout.Alignment.ALIGN_NORMAL, 1f, 0f, true);
+            }
+        });
+    }
+
+    /**
+     * Queues the measurement of a text as it would be shown by the given
+     * view, unless it is already cached or queued. Does nothing before Pie,
+     * where a {@link TextView} can't be given a measured text. Must be called
+     * from the UI thread. The text is copied, so it can keep changing.
+     *
+     * @param text the text the view will show
+     * @param view the view, or one styled the same way
+     */
+    public void prefetch(CharSequence text, TextView view) {
+        if (!PIE_OR_GREATER) {
+            return;
+        }
+        final CharSequence snapshot = snapshot(text);
+        final PrecomputedText.Params params = view.getTextMetricsParams();
+        final Key key = new Key(snapshot, params.getTextPaint(), 0, params);
+        if (mCache.containsKey(key) || mPending.containsKey(key)) {
+            return;
+        }
+        submit(key, new Task() {
+            @Override
+            public Object build() {
+                return PrecomputedText.create(snapshot, params);
+            }
+        });
+    }
+
+    /**
+     * Returns a layout computed in the background. Must be called from the UI
+     * thread.
+     *
+     * @return the layout, or null if it was not prefetched or is not ready yet
+     */
+    public StaticLayout getLayout(CharSequence text, TextPaint paint, int width) {
+        return (StaticLayout) lookup(new Key(text, paint, width, null));
+    }
+
+    /**
+     * Sets the text of a view, measured in the background if it was
+     * prefetched for a view styled the same way and is ready, or as is
+     * otherwise. Must be called from the UI thread.
+     *
+     * @return true if the view got a measured text
+     */
+    public boolean setText(TextView view, CharSequence text) {
+        if (PIE_OR_GREATER) {
+            final PrecomputedText.Params params = view.getTextMetricsParams();
+            final Object precomputed = lookup(new Key(text, params.getTextPaint(), 0, params));
+            if (precomputed != null) {
+                view.setText((CharSequence) precomputed);
+                return true;
+            }
+        }
+        view.setText(text);
+        return false;
+    }
+
+    private Object lookup(Key key) {
+        drainCompleted();
+        final Object value = mCache.get(key);
+        if (value != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+        return value;
+    }
+
+    private void submit(final Key key, final Task task) {
+        mPending.put(key, mExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                Object value = null;
+                try {
+                    value = task.build();
+                } finally {
+                    // even when it failed, so the key can be prefetched again
+                    mCompleted.add(new Result(key, value));
+                }
+            }
+        }));
+    }
+
+    /**
+     * Copies the text on the UI thread, so the workers don't read a text
+     * that is being changed.
+     */
+    private static CharSequence snapshot(CharSequence text) {
+        return text instanceof Spanned ? new SpannedString(text) : text.toString();
+    }
+
+    /**
+     * Moves the layouts completed by the workers into the cache. Must be
+     * called from the UI thread.
+     *
+     * @return the number of layouts moved
+     */
+    public int drainCompleted() {
+        int count = 0;
+        Result result;
+        while ((result = mCompleted.poll()) != null) {
+            mPending.remove(result.mKey);
+            if (result.mValue != null) {
+                mCache.put(result.mKey, result.mValue);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Cancels the layouts that were queued and not started yet.
+     */
+    public void cancelAll() {
+        for (Future<?> future : mPending.values()) {
+            future.cancel(false);
+        }
+        mPending.clear();
+    }
+
+    /**
+     * Cancels the queued layouts and drops the cached ones.
+     */
+    public void clear() {
+        cancelAll();
+        mCompleted.clear();
+        mCache.clear();
+    }
+
+    /**
+     * Stops the worker threads, the prefetcher can't be used afterwards.
+     */
+    public void shutdown() {
+        clear();
+        mExecutor.shutdownNow();
+    }
+
+    public int getPendingCount() {
+        return mPending.size();
+    }
+
+    public int getCachedCount() {
+        return mCache.size();
+    }
+
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    private interface Task {
+        /**
+         * Called on a worker thread.
+         */
+        Object build();
+    }
+
+    private static final class Result {
+        final Key mKey;
+        /**
+         * Null if the build failed.
+         */
+        final Object mValue;
+
+        Result(Key key, Object value) {
+            mKey = key;
+            mValue = value;
+        }
+    }
+
+    /**
+     * Kept in its own class so that {@link StaticLayout.Builder} is only
+     * loaded on Marshmallow and up.
+     */
+    @TargetApi(Build.VERSION_CODES.M)
+    private static class LayoutBuilder {
+        static StaticLayout build(CharSequence text, TextPaint paint, int width) {
+            return StaticLayout.Builder.obtain(text, 0, text.length(), paint, width)
+                    .setIncludePad(true)
+                    .build();
+        }
+    }
+
+    /**
+     * Identifies a result by its text content and spans, width and the paint
+     * settings changing the size of the text.
+     */
+    private static final class Key {
+        /**
+         * Scratch paint the character styles are applied to, only used from
+         * the UI thread.
+         */
+        private static final TextPaint sSpanPaint = new TextPaint();
+        private static final TextPaint sDefaultPaint = new TextPaint();
+
+        private final String mText;
+        /**
+         * The type and attributes of each span of a styled text, and their
+         * start, end and flags, null for plain text.
+         */
+        private final Object[] mSpans;
+        private final int[] mSpanRanges;
+        private final int mWidth;
+        private final float mTextSize;
+        private final float mTextScaleX;
+        private final Typeface mTypeface;
+        private final int mFlags;
+        /**
+         * The text metrics params of a precomputed text, null for a layout.
+         */
+        private final Object mParams;
+        private final int mHashCode;
+
+        Key(CharSequence text, TextPaint paint, int width, Object params) {
+            mText = text.toString();
+            if (text instanceof Spanned) {
+                final Spanned spanned = (Spanned) text;
+                final Object[] spans = spanned.getSpans(0, text.length(), Object.class);
+                mSpans = new Object[spans.length];
+                mSpanRanges = new int[spans.length * 3];
+                for (int i = 0; i < spans.length; i++) {
+                    mSpans[i] = getSpanAttributes(spans[i]);
+                    mSpanRanges[i * 3] = spanned.getSpanStart(spans[i]);
+                    mSpanRanges[i * 3 + 1] = spanned.getSpanEnd(spans[i]);
+                    mSpanRanges[i * 3 + 2] = spanned.getSpanFlags(spans[i]);
+                }
+            } else {
+                mSpans = null;
+                mSpanRanges = null;
+            }
+            mWidth = width;
+            mTextSize = paint.getTextSize();
+            mTextScaleX = paint.getTextScaleX();
+            mTypeface = paint.getTypeface();
+            mFlags = paint.getFlags();
+            mParams = params;
+            int hash = mText.hashCode();
+            hash = 31 * hash + Arrays.deepHashCode(mSpans);
+            hash = 31 * hash + Arrays.hashCode(mSpanRanges);
+            hash = 31 * hash + width;
+            hash = 31 * hash + Float.floatToIntBits(mTextSize);
+            hash = 31 * hash + Float.floatToIntBits(mTextScaleX);
+            hash = 31 * hash + (mTypeface != null ? mTypeface.hashCode() : 0);
+            hash = 31 * hash + (params != null ? params.hashCode() : 0);
+            mHashCode = 31 * hash + mFlags;
+        }
+
+        /**
+         * @return what tells spans apart: the marshalled content of
+         *         parcelable spans, the paint a character style draws with
+         *         along with its type, or the span itself for the others,
+         *         like click handlers, which are only compared by equals
+         */
+        private static Object getSpanAttributes(Object span) {
+            if (span instanceof ParcelableSpan) {
+                final ParcelableSpan parcelable = (ParcelableSpan) span;
+                final Parcel parcel = Parcel.obtain();
+                try {
+                    parcel.writeInt(parcelable.getSpanTypeId());
+                    parcelable.writeToParcel(parcel, 0);
+                    return parcel.marshall();
+                } finally {
+                    parcel.recycle();
+                }
+            }
+            if (span instanceof CharacterStyle && !(span instanceof ClickableSpan)) {
+                final TextPaint paint = sSpanPaint;
+                paint.set(sDefaultPaint);
+                ((CharacterStyle) span).updateDrawState(paint);
+                return new Object[] {
+                        span.getClass(), paint.getTextSize(), paint.getTextScaleX(),
+                        paint.getTextSkewX(), paint.getTypeface(), paint.getFlags(),
+                        paint.getColor(), paint.bgColor, paint.baselineShift, paint.linkColor
+                };
+            }
+            return span;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return mWidth == other.mWidth && mTextSize == other.mTextSize
+                    && mTextScaleX == other.mTextScaleX && mFlags == other.mFlags
+                    && (mTypeface == null ? other.mTypeface == null : mTypeface.equals(other.mTypeface))
+                    && (mParams == null ? other.mParams == null : mParams.equals(other.mParams))
+                    && mText.equals(other.mText)
+                    && Arrays.equals(mSpanRanges, other.mSpanRanges)
+                    && Arrays.deepEquals(mSpans, other.mSpans);
+        }
+    }
+}